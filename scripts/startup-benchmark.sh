@@ -0,0 +1,41 @@
+#!/bin/bash
+#
+# Measures the time to first SQL of the pigtosql launcher, with and without the startup optimizations.
+# Build the variants first:
+#
+#   ./gradlew shadowJar cdsArchive trimmedJar trimmedCdsArchive
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+
+DIR="$(cd "$(dirname "$0")/.." && pwd)"
+RUNS="${1:-5}"
+# Same script as the string-mode training run of the trimmed JAR
+PIG="$(cat "$DIR/scripts/startup-script.pig")"
+
+FULL_JAR="$DIR/build/libs/convertPigToSql-1.0.jar"
+TRIMMED_JAR="$DIR/build/libs/convertPigToSql-1.0-trimmed.jar"
+
+# Prints the average wall time, in ms, of converting the script with the given JAR and CDS archive
+measure() {
+    local jar="$1" archive="$2" total=0
+    for _ in $(seq "$RUNS"); do
+        local start end
+        start=$(date +%s%N)
+        if [ -n "$archive" ]; then
+            java --add-opens java.base/java.lang=ALL-UNNAMED -XX:SharedArchiveFile="$archive" -Xshare:auto \
+                -cp "$jar" io.github.sorieux.cli.Commands -s "$PIG" > /dev/null
+        else
+            java --add-opens java.base/java.lang=ALL-UNNAMED -Xshare:auto \
+                -cp "$jar" io.github.sorieux.cli.Commands -s "$PIG" > /dev/null
+        fi
+        end=$(date +%s%N)
+        total=$((total + (end - start) / 1000000))
+    done
+    echo $((total / RUNS))
+}
+
+printf "%-28s %s\n" "variant" "time to first SQL (ms, avg of $RUNS)"
+printf "%-28s %s\n" "shadow JAR" "$(measure "$FULL_JAR" "")"
+[ -f "${FULL_JAR%.jar}.jsa" ] && printf "%-28s %s\n" "shadow JAR + AppCDS" "$(measure "$FULL_JAR" "${FULL_JAR%.jar}.jsa")"
+[ -f "$TRIMMED_JAR" ] && printf "%-28s %s\n" "trimmed JAR" "$(measure "$TRIMMED_JAR" "")"
+[ -f "${TRIMMED_JAR%.jar}.jsa" ] && printf "%-28s %s\n" "trimmed JAR + AppCDS" "$(measure "$TRIMMED_JAR" "${TRIMMED_JAR%.jar}.jsa")"
@@ -0,0 +1,157 @@
+package io.github.sorieux.cli;
+
+import org.apache.calcite.piglet.PigConverter;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.rel2sql.RelToSqlConverter;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.pretty.SqlPrettyWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.calcite.piglet.PigConverter.create;
+
+/**
+ * Benchmarks each stage of the conversion pipeline separately, then the whole conversion.
+ * <p>
+ * Scripts are either test fixtures or linear scripts of {@link PigWorkloadGenerator} named
+ * {@code generated-<operators>}. Run with {@code ./gradlew jmh}; the gc profiler reports the allocation rate of each
+ * benchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ConversionBenchmark {
+
+    private static final String GENERATED_PREFIX = "generated-";
+
+    // %DECLARE n 5 or %DEFAULT n 5
+    private static final Pattern DECLARE_PATTERN = Pattern.compile("(?im)^\\s*%(?:DECLARE|DEFAULT)\\s+(\\w+)\\s+(\\S+)\\s*$");
+
+    @Param({"testPig.pig", "testPig2.pig", "pig_script_join_multi_store.pig", "generated-50", "generated-200"})
+    public String script;
+
+    private Commands commands;
+    private Path scriptDirectory;
+    private Path scriptPath;
+    private Map<String, String> params;
+    private String pigString;
+    private List<RelNode> relNodes;
+    private List<SqlNode> sqlNodes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        commands = new Commands();
+        scriptDirectory = Files.createTempDirectory("pigtosql-benchmark");
+        scriptPath = scriptDirectory.resolve("script.pig");
+
+        String content = script.startsWith(GENERATED_PREFIX)
+                ? new PigWorkloadGenerator(Integer.parseInt(script.substring(GENERATED_PREFIX.length())), 2, 0, 1, false).generate()
+                : readFixture(script);
+        Files.writeString(scriptPath, content);
+
+        params = new HashMap<>();
+        params.put("input", scriptPath.toString());
+        params.put("output", "outputFile");
+        pigString = inlineParameters(content, params);
+
+        relNodes = create(commands.getConfig()).pigScript2Rel(scriptPath.toString(), params, true);
+        RelToSqlConverter converter2Sql = new RelToSqlConverter(commands.getDialect());
+        sqlNodes = new ArrayList<>();
+        for (RelNode rel : relNodes) {
+            sqlNodes.add(converter2Sql.visitRoot(rel).asStatement());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(scriptPath);
+        Files.deleteIfExists(scriptDirectory);
+    }
+
+    @Benchmark
+    public List<RelNode> pigScript2Rel() throws Exception {
+        return create(commands.getConfig()).pigScript2Rel(scriptPath.toString(), params, true);
+    }
+
+    @Benchmark
+    public List<RelNode> pigQuery2Rel() throws Exception {
+        PigConverter converter2Rel = create(commands.getConfig());
+        return converter2Rel.pigQuery2Rel(pigString);
+    }
+
+    @Benchmark
+    public void visitRoot(Blackhole blackhole) {
+        RelToSqlConverter converter2Sql = new RelToSqlConverter(commands.getDialect());
+        for (RelNode rel : relNodes) {
+            blackhole.consume(converter2Sql.visitRoot(rel).asStatement());
+        }
+    }
+
+    @Benchmark
+    public void prettyFormat(Blackhole blackhole) {
+        for (SqlNode sqlNode : sqlNodes) {
+            SqlPrettyWriter writer = new SqlPrettyWriter(commands.getDialect());
+            blackhole.consume(writer.format(sqlNode));
+        }
+    }
+
+    @Benchmark
+    public String convertPigStringToSQL() {
+        return commands.convertPigStringToSQL(pigString);
+    }
+
+    private static String readFixture(String name) throws IOException {
+        try (InputStream input = ConversionBenchmark.class.getClassLoader().getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Substitutes the parameters of a script, including its %DECLARE and %DEFAULT ones, so that it can be
+     * converted as a string.
+     */
+    static String inlineParameters(String content, Map<String, String> params) {
+        Map<String, String> values = new HashMap<>(params);
+        Matcher declare = DECLARE_PATTERN.matcher(content);
+        while (declare.find()) {
+            values.putIfAbsent(declare.group(1), declare.group(2));
+        }
+
+        String inlined = DECLARE_PATTERN.matcher(content).replaceAll("");
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            inlined = inlined.replaceAll("\\$" + value.getKey() + "\\b", Matcher.quoteReplacement(value.getValue()));
+        }
+        return inlined;
+    }
+}
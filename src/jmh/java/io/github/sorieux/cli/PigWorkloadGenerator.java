@@ -0,0 +1,154 @@
+package io.github.sorieux.cli;
+
+/**
+ * Generates synthetic Pig scripts of a tunable shape, to measure how the conversion scales with script size.
+ * <p>
+ * A script LOADs an events table and the dimension tables its joins read, then splits its operators between
+ * {@code stores} branches starting from the events table, each ending in its own STORE. The operators of a branch
+ * cycle through a join, a filter and a projection:
+ * <ul>
+ *     <li>a join reads {@code joinFanIn} relations, the branch and {@code joinFanIn - 1} dimension tables, and is
+ *     followed by a projection back to the schema of the branch;</li>
+ *     <li>with macros, filters call a macro defined at the top of the script instead of being inlined;</li>
+ *     <li>with a nesting depth, projections become a GROUP followed by a nested FOREACH block chaining
+ *     {@code nestingDepth} inner operators (filter, order, limit).</li>
+ * </ul>
+ * The same shape always generates the same script; the seed only changes the literals, so that a directory of
+ * scripts of the same shape is not made of identical files.
+ */
+public class PigWorkloadGenerator {
+
+    private final int operators;
+    private final int joinFanIn;
+    private final int nestingDepth;
+    private final int stores;
+    private final boolean macros;
+
+    /**
+     * @param operators    Number of operators, joins, filters and projections, over all the branches.
+     * @param joinFanIn    Number of relations read by each join, at least 2.
+     * @param nestingDepth Number of inner operators of the nested FOREACH blocks, 0 for plain projections.
+     * @param stores       Number of branches, each ending in a STORE.
+     * @param macros       Whether filters call a macro.
+     */
+    public PigWorkloadGenerator(int operators, int joinFanIn, int nestingDepth, int stores, boolean macros) {
+        if (operators < 1 || joinFanIn < 2 || nestingDepth < 0 || stores < 1 || stores > operators) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid workload shape: operators=%d, joinFanIn=%d, nestingDepth=%d, stores=%d",
+                    operators, joinFanIn, nestingDepth, stores));
+        }
+        this.operators = operators;
+        this.joinFanIn = joinFanIn;
+        this.nestingDepth = nestingDepth;
+        this.stores = stores;
+        this.macros = macros;
+    }
+
+    /**
+     * @return The script of this shape.
+     */
+    public String generate() {
+        return generate(0);
+    }
+
+    /**
+     * @param seed Offsets the literals of the script.
+     * @return The script of this shape.
+     */
+    public String generate(int seed) {
+        StringBuilder pig = new StringBuilder();
+        if (macros) {
+            pig.append("DEFINE above_threshold(rel, threshold) RETURNS filtered {\n")
+                    .append("    $filtered = FILTER $rel BY amount > $threshold;\n")
+                    .append("};\n");
+        }
+        pig.append("events = LOAD 'data/input/events.csv' USING PigStorage(',') AS (id:int, amount:double, category:chararray);\n");
+        for (int d = 1; d < joinFanIn; d++) {
+            pig.append(String.format("dim%d = LOAD 'data/input/categories%d.csv' USING PigStorage(',') AS (category:chararray, label%d:chararray);%n",
+                    d, d, d));
+        }
+
+        for (int branch = 0; branch < stores; branch++) {
+            // The first branches get the remaining operators
+            int branchOperators = operators / stores + (branch < operators % stores ? 1 : 0);
+            String previous = "events";
+            for (int i = 1; i <= branchOperators; i++) {
+                String alias = String.format("b%d_r%d", branch, i);
+                switch (i % 3) {
+                    case 0:
+                        appendJoin(pig, alias, previous);
+                        break;
+                    case 1:
+                        appendFilter(pig, alias, previous, seed + i);
+                        break;
+                    default:
+                        appendProjection(pig, alias, previous, seed + i);
+                        break;
+                }
+                previous = alias;
+            }
+            pig.append(String.format("STORE %s INTO 'data/output/result%d';%n", previous, branch));
+        }
+        return pig.toString();
+    }
+
+    private void appendJoin(StringBuilder pig, String alias, String previous) {
+        StringBuilder join = new StringBuilder(String.format("%s_join = JOIN %s BY category", alias, previous));
+        for (int d = 1; d < joinFanIn; d++) {
+            join.append(String.format(", dim%d BY category", d));
+        }
+        pig.append(join).append(";\n");
+        pig.append(String.format("%s = FOREACH %s_join GENERATE %s::id AS id, %s::amount AS amount, %s::category AS category;%n",
+                alias, alias, previous, previous, previous));
+    }
+
+    private void appendFilter(StringBuilder pig, String alias, String previous, int threshold) {
+        if (macros) {
+            pig.append(String.format("%s = above_threshold(%s, %d);%n", alias, previous, threshold));
+        } else {
+            pig.append(String.format("%s = FILTER %s BY amount > %d;%n", alias, previous, threshold));
+        }
+    }
+
+    private void appendProjection(StringBuilder pig, String alias, String previous, int literal) {
+        if (nestingDepth == 0) {
+            pig.append(String.format("%s = FOREACH %s GENERATE id, amount * %d AS amount, category;%n", alias, previous, literal % 7 + 2));
+            return;
+        }
+
+        pig.append(String.format("%s_group = GROUP %s BY category;%n", alias, previous));
+        pig.append(String.format("%s = FOREACH %s_group {%n", alias, alias));
+        String inner = previous;
+        for (int level = 1; level <= nestingDepth; level++) {
+            String nested = "inner" + level;
+            switch (level % 3) {
+                case 1:
+                    pig.append(String.format("    %s = FILTER %s BY amount > %d;%n", nested, inner, literal + level));
+                    break;
+                case 2:
+                    pig.append(String.format("    %s = ORDER %s BY amount DESC;%n", nested, inner));
+                    break;
+                default:
+                    pig.append(String.format("    %s = LIMIT %s %d;%n", nested, inner, 10 * level));
+                    break;
+            }
+            inner = nested;
+        }
+        pig.append(String.format("    GENERATE COUNT(%s) AS id, SUM(%s.amount) AS amount, group AS category;%n", inner, inner));
+        pig.append("};\n");
+    }
+
+    /**
+     * @return The number of statements of the scripts of this shape, those of the nested blocks and macros included:
+     * the size measure of the scaling benchmark.
+     */
+    public int statementCount() {
+        return (int) generate().chars().filter(c -> c == ';').count();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("operators=%d, joinFanIn=%d, nestingDepth=%d, stores=%d, macros=%s",
+                operators, joinFanIn, nestingDepth, stores, macros);
+    }
+}
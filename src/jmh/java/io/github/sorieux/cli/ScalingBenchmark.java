@@ -0,0 +1,341 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.calcite.piglet.PigConverter;
+import org.apache.calcite.rel.RelNode;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.apache.calcite.piglet.PigConverter.create;
+
+/**
+ * Measures how the conversion time and heap grow with the shape of generated scripts (see
+ * {@link PigWorkloadGenerator}), and flags the measures growing superlinearly.
+ * <p>
+ * Each series varies one parameter of the shape: operator count (plain, with macros and with nested blocks), join
+ * fan-in, nesting depth and number of STOREs. For each point, the Calcite translation ({@code pigQuery2Rel} on a
+ * converter created beforehand), the unparsing of its RelNodes, {@link Commands#convertPigStringToSQL(String)} and
+ * the directory mode over several scripts of the shape are timed, with the bytes allocated by all threads and the
+ * peak heap of {@code convertPigStringToSQL}. The growth exponent of a measure is the slope of its log-log curve
+ * against the varied parameter, over the whole series and between its last two points, where blow-ups show first.
+ * Run with {@code ./gradlew scalingBenchmark}.
+ */
+@Command(
+        name = "scalingBenchmark",
+        description = "Measures how the conversion time and heap grow with the shape of generated Pig scripts.",
+        mixinStandardHelpOptions = true
+)
+public class ScalingBenchmark implements Callable<Integer> {
+
+    // Timed measures of each point, the first two being the Calcite translation path
+    static final String PIG_TO_REL = "pigToRel";
+    static final String REL_TO_SQL = "relToSql";
+    static final String STRING = "convertPigStringToSQL";
+    static final String DIRECTORY = "directory";
+
+    private static final List<String> TIME_MEASURES = List.of(PIG_TO_REL, REL_TO_SQL, STRING, DIRECTORY);
+
+    @Option(names = {"--max-operators"}, description = "Largest operator count of the operator series (default: ${DEFAULT-VALUE}).")
+    private int maxOperators = 400;
+
+    @Option(names = {"--runs"}, description = "Measured runs of each point, the median being reported (default: ${DEFAULT-VALUE}).")
+    private int runs = 5;
+
+    @Option(names = {"--warmups"}, description = "Unmeasured runs of each point (default: ${DEFAULT-VALUE}).")
+    private int warmups = 2;
+
+    @Option(names = {"--directory-files"}, description = "Number of scripts converted by each directory mode run (default: ${DEFAULT-VALUE}).")
+    private int directoryFiles = 8;
+
+    @Option(names = {"--threads"}, description = "Threads of the directory mode (default: ${DEFAULT-VALUE}).")
+    private int threads = 4;
+
+    @Option(names = {"--slope-threshold"}, description = "Growth exponent above which a measure is flagged as superlinear (default: ${DEFAULT-VALUE}).")
+    private double slopeThreshold = 1.25;
+
+    @Option(names = {"--report"}, description = "JSON report of the curves (default: ${DEFAULT-VALUE}).")
+    private String reportPath = "scaling-report.json";
+
+    @Option(names = {"--fail-on-superlinear"}, description = "Exit with status 1 when a measure of the Calcite translation path is flagged.")
+    private boolean failOnSuperlinear;
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new ScalingBenchmark()).execute(args));
+    }
+
+    /**
+     * A series of shapes varying one parameter.
+     */
+    static final class Series {
+
+        final String name;
+        final String parameter;
+        final List<Integer> values;
+        final IntFunction<PigWorkloadGenerator> shape;
+
+        Series(String name, String parameter, List<Integer> values, IntFunction<PigWorkloadGenerator> shape) {
+            this.name = name;
+            this.parameter = parameter;
+            this.values = values;
+            this.shape = shape;
+        }
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        List<Integer> operatorCounts = Stream.iterate(25, count -> count <= maxOperators, count -> count * 2)
+                .collect(Collectors.toList());
+        List<Series> series = List.of(
+                new Series("operators", "operators", operatorCounts,
+                        operators -> new PigWorkloadGenerator(operators, 2, 0, 1, false)),
+                new Series("operators-macros", "operators", operatorCounts,
+                        operators -> new PigWorkloadGenerator(operators, 2, 0, 1, true)),
+                new Series("operators-nested", "operators", operatorCounts,
+                        operators -> new PigWorkloadGenerator(operators, 2, 2, 1, false)),
+                new Series("joinFanIn", "joinFanIn", List.of(2, 3, 4, 6, 8),
+                        fanIn -> new PigWorkloadGenerator(60, fanIn, 0, 1, false)),
+                new Series("nestingDepth", "nestingDepth", List.of(1, 2, 4, 8),
+                        depth -> new PigWorkloadGenerator(60, 2, depth, 1, false)),
+                new Series("stores", "stores", List.of(1, 2, 4, 8, 16),
+                        stores -> new PigWorkloadGenerator(192, 2, 0, stores, false)));
+
+        boolean translationFlagged = false;
+        List<Map<String, Object>> seriesReports = new ArrayList<>();
+        for (Series current : series) {
+            System.out.printf("%nSeries %s:%n", current.name);
+            System.out.printf("  %12s %10s %10s %10s %12s %10s %14s %12s%n", current.parameter, "statements",
+                    PIG_TO_REL + "ms", REL_TO_SQL + "ms", "stringMs", "dirMs", "allocatedMB", "peakHeapMB");
+
+            List<Map<String, Object>> points = new ArrayList<>();
+            for (int value : current.values) {
+                Map<String, Object> point = measure(current.shape.apply(value));
+                point.put(current.parameter, value);
+                points.add(point);
+                printPoint(value, point);
+            }
+
+            Map<String, Object> growth = new LinkedHashMap<>();
+            for (String measure : TIME_MEASURES) {
+                Map<String, Object> exponents = growth(current, points, measure);
+                growth.put(measure, exponents);
+                if (Boolean.TRUE.equals(exponents.get("superlinear"))) {
+                    System.out.printf("  SUPERLINEAR: %s grows as %s^%.2f (last segment ^%.2f)%n", measure,
+                            current.parameter, exponents.get("slope"), exponents.get("lastSlope"));
+                    translationFlagged |= measure.equals(PIG_TO_REL) || measure.equals(REL_TO_SQL);
+                }
+            }
+
+            Map<String, Object> seriesReport = new LinkedHashMap<>();
+            seriesReport.put("series", current.name);
+            seriesReport.put("parameter", current.parameter);
+            seriesReport.put("points", points);
+            seriesReport.put("growth", growth);
+            seriesReports.add(seriesReport);
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("runs", runs);
+        json.put("slopeThreshold", slopeThreshold);
+        json.put("series", seriesReports);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(Paths.get(reportPath).toFile(), json);
+        System.out.printf("%nScaling report saved to: %s%n", reportPath);
+
+        return translationFlagged && failOnSuperlinear ? 1 : 0;
+    }
+
+    /**
+     * Measures a shape: the median time of each measure in milliseconds, the median bytes allocated and the median
+     * peak heap of {@code convertPigStringToSQL}. A shape that fails to convert is reported with its failure.
+     */
+    private Map<String, Object> measure(PigWorkloadGenerator shape) throws IOException {
+        Map<String, Object> point = new LinkedHashMap<>();
+        point.put("shape", shape.toString());
+        point.put("statements", shape.statementCount());
+
+        String script = shape.generate();
+        Commands commands = new Commands();
+        new CommandLine(commands).parseArgs("--threads", String.valueOf(threads));
+        Path directory = Files.createTempDirectory("pigtosql-scaling");
+        Path inputDirectory = Files.createDirectories(directory.resolve("input"));
+        Path outputDirectory = directory.resolve("output");
+        for (int i = 0; i < directoryFiles; i++) {
+            Files.writeString(inputDirectory.resolve("script" + i + ".pig"), shape.generate(i));
+        }
+
+        Map<String, List<Double>> millis = new LinkedHashMap<>();
+        TIME_MEASURES.forEach(measure -> millis.put(measure, new ArrayList<>()));
+        List<Double> allocatedBytes = new ArrayList<>();
+        List<Double> peakHeapBytes = new ArrayList<>();
+        try {
+            for (int run = 0; run < warmups + runs; run++) {
+                boolean measured = run >= warmups;
+
+                PigConverter converter = create(commands.getConfig());
+                long start = System.nanoTime();
+                List<RelNode> relNodes = converter.pigQuery2Rel(script);
+                double pigToRel = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                commands.convertRelNodesToSQL(relNodes);
+                double relToSql = (System.nanoTime() - start) / 1e6;
+
+                System.gc();
+                resetPeakHeap();
+                long allocated = allocatedBytes();
+                start = System.nanoTime();
+                commands.convertPigStringToSQL(script);
+                double string = (System.nanoTime() - start) / 1e6;
+                long allocatedByString = allocatedBytes() - allocated;
+                long peakHeap = peakHeap();
+
+                start = System.nanoTime();
+                Map<String, Boolean> results = commands.convertPigDirectoryToSQL(inputDirectory.toString(), outputDirectory.toString());
+                double directoryMillis = (System.nanoTime() - start) / 1e6;
+                if (results.containsValue(false)) {
+                    throw new IllegalStateException("Directory mode failed to convert " + results);
+                }
+
+                if (measured) {
+                    millis.get(PIG_TO_REL).add(pigToRel);
+                    millis.get(REL_TO_SQL).add(relToSql);
+                    millis.get(STRING).add(string);
+                    millis.get(DIRECTORY).add(directoryMillis);
+                    allocatedBytes.add((double) allocatedByString);
+                    peakHeapBytes.add((double) peakHeap);
+                }
+            }
+
+            Map<String, Object> medians = new LinkedHashMap<>();
+            millis.forEach((measure, values) -> medians.put(measure, median(values)));
+            point.put("medianMillis", medians);
+            point.put("medianAllocatedBytes", median(allocatedBytes));
+            point.put("medianPeakHeapBytes", median(peakHeapBytes));
+        } catch (Exception e) {
+            point.put("failure", e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            deleteDirectory(directory);
+        }
+        return point;
+    }
+
+    /**
+     * Computes the growth exponents of a measure over a series: the least-squares slope of the log-log curve and
+     * the slope between the last two points.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> growth(Series series, List<Map<String, Object>> points, String measure) {
+        List<double[]> curve = new ArrayList<>();
+        for (Map<String, Object> point : points) {
+            Map<String, Double> medians = (Map<String, Double>) point.get("medianMillis");
+            if (medians != null && medians.get(measure) > 0) {
+                curve.add(new double[]{Math.log((Integer) point.get(series.parameter)), Math.log(medians.get(measure))});
+            }
+        }
+        curve.sort(Comparator.comparingDouble(xy -> xy[0]));
+
+        Map<String, Object> exponents = new LinkedHashMap<>();
+        if (curve.size() < 2) {
+            exponents.put("slope", null);
+            exponents.put("lastSlope", null);
+            exponents.put("superlinear", false);
+            return exponents;
+        }
+
+        double meanX = curve.stream().mapToDouble(xy -> xy[0]).average().orElse(0);
+        double meanY = curve.stream().mapToDouble(xy -> xy[1]).average().orElse(0);
+        double covariance = curve.stream().mapToDouble(xy -> (xy[0] - meanX) * (xy[1] - meanY)).sum();
+        double variance = curve.stream().mapToDouble(xy -> (xy[0] - meanX) * (xy[0] - meanX)).sum();
+        double slope = covariance / variance;
+
+        double[] last = curve.get(curve.size() - 1);
+        double[] beforeLast = curve.get(curve.size() - 2);
+        double lastSlope = (last[1] - beforeLast[1]) / (last[0] - beforeLast[0]);
+
+        exponents.put("slope", slope);
+        exponents.put("lastSlope", lastSlope);
+        exponents.put("superlinear", slope > slopeThreshold || lastSlope > slopeThreshold);
+        return exponents;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printPoint(int value, Map<String, Object> point) {
+        Map<String, Double> medians = (Map<String, Double>) point.get("medianMillis");
+        if (medians == null) {
+            System.out.printf("  %12d %10d failed: %s%n", value, (Integer) point.get("statements"), point.get("failure"));
+            return;
+        }
+        System.out.printf("  %12d %10d %10.1f %10.1f %12.1f %10.1f %14.1f %12.1f%n", value, (Integer) point.get("statements"),
+                medians.get(PIG_TO_REL), medians.get(REL_TO_SQL), medians.get(STRING), medians.get(DIRECTORY),
+                (Double) point.get("medianAllocatedBytes") / (1 << 20), (Double) point.get("medianPeakHeapBytes") / (1 << 20));
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = values.stream().sorted().collect(Collectors.toList());
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    /**
+     * @return The bytes allocated so far by the live threads, the fork-join pool threads unparsing the statements
+     * included, or 0 if the JVM does not measure allocations.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                // Threads that died since the IDs were listed are reported as -1
+                return Arrays.stream(allocations.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                        .filter(bytes -> bytes > 0)
+                        .sum();
+            }
+        }
+        return 0;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+    }
+
+    private static void resetPeakHeap() {
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    /**
+     * @return The sum of the peak usages of the heap pools since their last reset.
+     */
+    private static long peakHeap() {
+        return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.sorieux.cli;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.BuiltInMetadata;
+import org.apache.calcite.rel.metadata.ChainedRelMetadataProvider;
+import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMdDistinctRowCount;
+import org.apache.calcite.rel.metadata.RelMdSelectivity;
+import org.apache.calcite.rel.metadata.RelMdSize;
+import org.apache.calcite.rel.metadata.RelMdUtil;
+import org.apache.calcite.rel.metadata.RelMetadataProvider;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.metadata.ReflectiveRelMetadataProvider;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.mapping.IntPair;
+
+import java.util.function.Supplier;
+
+/**
+ * Metadata handlers estimating cardinalities from a {@link TableCatalog}, on top of Calcite's defaults.
+ * <p>
+ * Row counts and unique keys come from the table statistics attached by {@link TableCatalog#attach(RelNode)}. These
+ * handlers add what Calcite cannot get from a table statistic: the number of distinct values of the columns of a
+ * scan, the selectivity of an equi-join as {@code 1 / max(NDV(left key), NDV(right key))} instead of a fixed guess,
+ * and the average row size.
+ */
+public final class CatalogMetadata {
+
+    private CatalogMetadata() {
+    }
+
+    /**
+     * Creates a metadata provider using the catalog, falling back to Calcite's default handlers.
+     *
+     * @param catalog The table catalog.
+     * @return The metadata provider.
+     */
+    public static RelMetadataProvider provider(TableCatalog catalog) {
+        return ChainedRelMetadataProvider.of(ImmutableList.of(
+                ReflectiveRelMetadataProvider.reflectiveSource(new DistinctRowCount(catalog),
+                        BuiltInMetadata.DistinctRowCount.Handler.class),
+                ReflectiveRelMetadataProvider.reflectiveSource(new Selectivity(),
+                        BuiltInMetadata.Selectivity.Handler.class),
+                ReflectiveRelMetadataProvider.reflectiveSource(new Size(catalog),
+                        BuiltInMetadata.Size.Handler.class),
+                DefaultRelMetadataProvider.INSTANCE));
+    }
+
+    /**
+     * Runs an action that may replace the metadata provider of a cluster, e.g. with {@link #provider(TableCatalog)},
+     * then restores the previous provider. The cluster is shared with the converter that translated the plan and the
+     * later stages, whose estimates must not use the catalog.
+     *
+     * @param cluster The cluster of the plan.
+     * @param action  The action using the cluster.
+     * @return The result of the action.
+     */
+    public static <T> T restoringProvider(RelOptCluster cluster, Supplier<T> action) {
+        RelMetadataProvider previous = cluster.getMetadataProvider();
+        try {
+            return action.get();
+        } finally {
+            cluster.setMetadataProvider(previous != null ? previous : DefaultRelMetadataProvider.INSTANCE);
+            cluster.invalidateMetadataQuery();
+        }
+    }
+
+    /**
+     * Number of distinct values of the columns of a scan, from the column NDVs of the catalog.
+     */
+    public static class DistinctRowCount extends RelMdDistinctRowCount {
+
+        private final TableCatalog catalog;
+
+        DistinctRowCount(TableCatalog catalog) {
+            this.catalog = catalog;
+        }
+
+        public Double getDistinctRowCount(TableScan scan, RelMetadataQuery mq, ImmutableBitSet groupKey,
+                                          RexNode predicate) {
+            Double distinctCount = catalog.getDistinctCount(scan.getTable().getQualifiedName(), scan.getRowType(), groupKey);
+            if (distinctCount == null) {
+                return super.getDistinctRowCount((RelNode) scan, mq, groupKey, predicate);
+            }
+            if (predicate != null) {
+                distinctCount *= RelMdUtil.guessSelectivity(predicate);
+            }
+            return Math.max(1, distinctCount);
+        }
+    }
+
+    /**
+     * Selectivity of inner equi-joins, from the number of distinct values of their keys.
+     */
+    public static class Selectivity extends RelMdSelectivity {
+
+        public Double getSelectivity(Join join, RelMetadataQuery mq, RexNode predicate) {
+            if (join.getJoinType() != JoinRelType.INNER || predicate == null || !predicate.equals(join.getCondition())) {
+                return super.getSelectivity(join, mq, predicate);
+            }
+
+            JoinInfo joinInfo = join.analyzeCondition();
+            if (joinInfo.pairs().isEmpty()) {
+                return super.getSelectivity(join, mq, predicate);
+            }
+
+            double selectivity = 1;
+            for (IntPair keys : joinInfo.pairs()) {
+                Double leftDistinctCount = mq.getDistinctRowCount(join.getLeft(), ImmutableBitSet.of(keys.source), null);
+                Double rightDistinctCount = mq.getDistinctRowCount(join.getRight(), ImmutableBitSet.of(keys.target), null);
+                if (leftDistinctCount == null || rightDistinctCount == null) {
+                    return super.getSelectivity(join, mq, predicate);
+                }
+                selectivity /= Math.max(1, Math.max(leftDistinctCount, rightDistinctCount));
+            }
+            if (!joinInfo.nonEquiConditions.isEmpty()) {
+                selectivity *= RelMdUtil.guessSelectivity(
+                        RexUtil.composeConjunction(join.getCluster().getRexBuilder(), joinInfo.nonEquiConditions));
+            }
+            return selectivity;
+        }
+    }
+
+    /**
+     * Average row size of a scan, from the table size of the catalog.
+     */
+    public static class Size extends RelMdSize {
+
+        private final TableCatalog catalog;
+
+        Size(TableCatalog catalog) {
+            this.catalog = catalog;
+        }
+
+        public Double averageRowSize(TableScan scan, RelMetadataQuery mq) {
+            Double averageRowSize = catalog.getAverageRowSize(scan.getTable().getQualifiedName());
+            return averageRowSize != null ? averageRowSize : super.averageRowSize(scan, mq);
+        }
+    }
+}
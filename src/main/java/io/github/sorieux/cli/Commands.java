@@ -1,5 +1,6 @@
 package io.github.sorieux.cli;
 
+import io.github.sorieux.cli.ConversionMetrics.FileMetrics;
 import org.apache.calcite.piglet.PigConverter;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.rel2sql.RelToSqlConverter;
@@ -10,20 +11,50 @@ import org.apache.calcite.sql.parser.SqlParser;
 import org.apache.calcite.sql.pretty.SqlPrettyWriter;
 import org.apache.calcite.tools.FrameworkConfig;
 import org.apache.calcite.tools.Frameworks;
-import org.apache.calcite.tools.Programs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
-import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.apache.calcite.piglet.PigConverter.create;
 
@@ -31,18 +62,45 @@ import static org.apache.calcite.piglet.PigConverter.create;
 @CommandLine.Command(
         description = "ConvertPigToSQL - A tool to convert Pig scripts to SQL.",
         mixinStandardHelpOptions = true, // Adds standard help options like --help
-        version = "1.0"
+        caseInsensitiveEnumValuesAllowed = true,
+        version = Commands.VERSION
 )
 public class Commands implements Runnable {
 
+    static final String VERSION = "1.0";
+
+    // Written to the output directory by the --dedupe mode
+    static final String DUPLICATION_REPORT = "duplication-report.json";
+
     private static final Logger logger = LoggerFactory.getLogger(Commands.class);
 
+    // Quiet period after which the changes seen by --watch are re-converted
+    private static final long WATCH_DEBOUNCE_MILLIS = 50;
+
+    // Measured runs of each variant of a query in --differential mode
+    private static final int DIFFERENTIAL_RUNS = 5;
+
+    // Minimum number of statements of a script split by --split-components
+    private static final int SPLIT_MIN_STATEMENTS = 50;
+
+    // Statements unparsed ahead of the one being written, per available processor
+    private static final int UNPARSE_WINDOW_PER_PROCESSOR = 2;
+
+    // Minimum number of statements of a script unparsed concurrently, smaller scripts are unparsed by the calling thread
+    private static final int UNPARSE_CONCURRENT_MIN_STATEMENTS = 8;
+
+    // Per thread, the unparser of each dialect, reused across statements
+    private static final ThreadLocal<Map<SqlDialect, DialectUnparser>> UNPARSERS = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    // $name or ${name}, in the output file of a parameter set
+    private static final Pattern PARAMETER_REFERENCE_PATTERN = Pattern.compile("\\$\\{(\\w+)}|\\$(\\w+)");
+
     // Configuration for the Calcite framework
     private final FrameworkConfig config = Frameworks.newConfigBuilder()
             .parserConfig(SqlParser.Config.DEFAULT)
             .build();
 
-    // Setting the SQL dialect to ANSI
+    // Setting the default SQL dialect to ANSI
     private final SqlDialect dialect = AnsiSqlDialect.DEFAULT;
 
     @Option(names = {"-s", "--string"}, description = "String containing the Pig script to convert.")
@@ -60,6 +118,103 @@ public class Commands implements Runnable {
     @Option(names = {"-od", "--outputDirectory"}, description = "Directory to store the converted SQL files.")
     private String outputDirectoryPath;
 
+    @Option(names = {"-t", "--threads"}, description = "Number of Pig files converted concurrently in directory mode (default: 1).")
+    private int threads = 1;
+
+    @Option(names = {"--virtual-threads"}, description = "Run directory conversions on virtual threads (requires a JVM supporting them).")
+    private boolean virtualThreads;
+
+    @Option(names = {"--timeout"}, description = "Maximum time in seconds allowed to convert a single file in directory mode (default: no limit). A file exceeding it is reported as failed and its SQL is discarded, but its conversion keeps its thread until it ends.")
+    private long timeoutSeconds;
+
+    @Option(names = {"-r", "--recursive"}, description = "Also convert Pig files found in subdirectories of the input directory.")
+    private boolean recursive;
+
+    @Option(names = {"--watch"}, description = "After converting the input directory, keep watching it and re-convert the scripts whose file or imported macros change.")
+    private boolean watch;
+
+    @Option(names = {"--dedupe"}, description = "In directory mode, translate scripts differing only by their literals once, and write a duplication report.")
+    private boolean dedupe;
+
+    @Option(names = {"--analyze"}, description = "Write a ranked JSON report of the estimated cost and the anti-patterns of the queries of the input file or directory, instead of converting them.")
+    private String analyzeReportPath;
+
+    @Option(names = {"--differential"}, description = "Execute the queries of the input file or directory locally on sample data, with and without optimization, from their RelNodes and from their SQL, and write a JSON report comparing the results, times and memory.")
+    private String differentialReportPath;
+
+    @Option(names = {"--sample-rows"}, description = "Number of rows generated per table in --differential mode (default: 1000).")
+    private int sampleRows = 1000;
+
+    @Option(names = {"--serve"}, description = "Start a long-lived HTTP server converting Pig scripts sent to it.")
+    private boolean serve;
+
+    @Option(names = {"--host"}, description = "Host the server listens on (default: ${DEFAULT-VALUE}).")
+    private String host = "127.0.0.1";
+
+    @Option(names = {"--port"}, description = "Port the server listens on (default: ${DEFAULT-VALUE}).")
+    private int port = 8765;
+
+    @Option(names = {"--token"}, description = "Token the clients of the server must send in an 'Authorization: Bearer <token>' header (default: a random token, printed at start).")
+    private String token;
+
+    @Option(names = {"--cache-dir"}, description = "Directory of the conversion cache, reusing the SQL of unchanged scripts.")
+    private String cacheDirectoryPath;
+
+    @Option(names = {"--cache-max-size"}, description = "Maximum size of the conversion cache in MB (default: ${DEFAULT-VALUE}).")
+    private long cacheMaxSizeMb = 512;
+
+    @Option(names = {"--metrics-out"}, description = "Write per-file stage timings to this report, as CSV if it ends with .csv, as JSON otherwise.")
+    private String metricsOutputPath;
+
+    @Option(names = {"-d", "--dialects"}, split = ",", description = "Comma-separated SQL dialects to generate, e.g. hive,spark,presto (default: ansi).")
+    private List<String> dialectNames;
+
+    @Option(names = {"--optimize"}, description = "Optimize the plans with rule-based rewrites before generating SQL.")
+    private boolean optimize;
+
+    @Option(names = {"--optimize-rules"}, split = ",", description = "Comma-separated optimization rules to apply (default: all of them).")
+    private List<String> optimizeRules;
+
+    @Option(names = {"--catalog"}, description = "JSON catalog of table statistics (row counts, column NDVs, sizes) used to reorder joins by estimated cost.")
+    private String catalogPath;
+
+    @Option(names = {"--partitions"}, description = "JSON mapping of LOAD path templates to partitioned tables, adding partition predicates to the generated SQL.")
+    private String partitionMappingPath;
+
+    @Option(names = {"--shared-subplans"}, description = "Emit the subplans shared by several statements once: ${COMPLETION-CANDIDATES}.")
+    private SharedSubplans.Mode sharedSubplansMode;
+
+    @Option(names = {"--split-components"}, description = "Translate the independent STORE branches of large scripts concurrently, the statements being ordered by branch.")
+    private boolean splitComponents;
+
+    @Option(names = {"--param-file"}, description = "CSV or JSON Lines file of parameter sets, the input file being converted once per set.")
+    private String parameterFilePath;
+
+    // Opened on first use, shared by concurrent conversions
+    private ConversionCache cache;
+
+    // Created on first use when optimization is enabled
+    private PlanOptimizer optimizer;
+
+    // Created on first use when a catalog is given
+    private JoinOrderOptimizer joinOrderOptimizer;
+    private TableCatalog catalog;
+
+    // Read on first use when a partition mapping is given
+    private PartitionMapping partitionMapping;
+
+    // In --watch mode, a converter created ahead of the next change by the watching thread
+    private final ThreadLocal<PigConverter> spareConverter = new ThreadLocal<>();
+
+    // Created on first use when --split-components is given
+    private ExecutorService componentExecutor;
+
+    // In directory mode, the outcome of the conversion run by the current thread, failed when it times out
+    private final ThreadLocal<CompletableFuture<Boolean>> runningConversion = new ThreadLocal<>();
+
+    // Collects the metrics of file conversions when a report is requested
+    private ConversionMetrics metrics;
+
     public static void main(String[] args) {
         int exitCode = new CommandLine(new Commands()).execute(args);
         System.exit(exitCode);
@@ -67,19 +222,92 @@ public class Commands implements Runnable {
 
     @Override
     public void run() {
+        if (metricsOutputPath != null) {
+            metrics = new ConversionMetrics();
+        }
+
+        try {
+            checkSharedSubplansMode();
+            getCatalog();
+            getPartitionMapping();
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            throw new CommandLine.ParameterException(new CommandLine(this), e.getMessage());
+        }
+
         // Determine mode based on provided options and perform conversion
-        if (pigString != null) {
-            String sql = convertPigStringToSQL(pigString);
-            System.out.println(sql);
+        if (serve) {
+            serve();
+        } else if (analyzeReportPath != null && (inputFilePath != null || inputDirectoryPath != null)) {
+            PlanAnalyzer analyzer = inputFilePath != null
+                    ? analyzePigFiles(null, List.of(Paths.get(inputFilePath)))
+                    : analyzePigFiles(Paths.get(inputDirectoryPath), listPigFiles(Paths.get(inputDirectoryPath)));
+            analyzer.printSummary(System.out, 5);
+            try {
+                analyzer.write(Paths.get(analyzeReportPath));
+                System.out.printf("Analysis saved to: %s%n", analyzeReportPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error writing the analysis report.", e);
+            }
+        } else if (differentialReportPath != null && (inputFilePath != null || inputDirectoryPath != null)) {
+            DifferentialExecution execution = inputFilePath != null
+                    ? executePigFiles(null, List.of(Paths.get(inputFilePath)))
+                    : executePigFiles(Paths.get(inputDirectoryPath), listPigFiles(Paths.get(inputDirectoryPath)));
+            execution.printSummary(System.out);
+            try {
+                execution.write(Paths.get(differentialReportPath));
+                System.out.printf("Differential execution report saved to: %s%n", differentialReportPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error writing the differential execution report.", e);
+            }
+        } else if (pigString != null) {
+            Map<String, String> sqlByDialect = convertPigStringToSQLByDialect(pigString);
+            sqlByDialect.forEach((dialectName, sql) -> {
+                if (dialectNames != null) {
+                    System.out.printf("-- %s%n", dialectName);
+                }
+                System.out.println(sql);
+            });
+        } else if (inputFilePath != null && outputFilePath != null && parameterFilePath != null) {
+            try {
+                List<String> outputFiles = convertPigFileToSQL(inputFilePath, outputFilePath,
+                        ParameterSets.read(Paths.get(parameterFilePath)));
+                System.out.printf("File converted with %d parameter set(s), e.g. saved to: %s%n", outputFiles.size(),
+                        outputFiles.isEmpty() ? outputFilePath : outputFiles.get(0));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading the parameter file.", e);
+            } finally {
+                writeMetrics();
+            }
         } else if (inputFilePath != null && outputFilePath != null) {
-            convertPigFileToSQL(inputFilePath, outputFilePath);
-            System.out.printf("File converted and saved to: %s%n", outputFilePath);
+            try {
+                convertPigFileToSQL(inputFilePath, outputFilePath);
+                System.out.printf("File converted and saved to: %s%n", outputFilePath);
+            } finally {
+                writeMetrics();
+            }
         } else if (inputDirectoryPath != null && outputDirectoryPath != null) {
-            Map<String, Boolean> conversionResults = convertPigDirectoryToSQL(inputDirectoryPath, outputDirectoryPath);
-            conversionResults.forEach((file, success) -> {
+            // Results are reported as soon as each file completes
+            convertPigDirectoryToSQL(inputDirectoryPath, outputDirectoryPath, (file, success) -> {
                 String status = success ? "[SUCCESS]" : "[FAILURE]";
                 System.out.printf("%s Conversion of %s%n", status, file);
             });
+
+            if (dedupe) {
+                System.out.printf("Duplication report saved to: %s%n", Paths.get(outputDirectoryPath, DUPLICATION_REPORT));
+            }
+
+            if (metrics != null) {
+                metrics.printSummary(System.out, 5);
+                writeMetrics();
+            }
+
+            if (watch) {
+                System.out.printf("Watching %s for changes, press Ctrl+C to stop.%n", inputDirectoryPath);
+                watchPigDirectory(inputDirectoryPath, outputDirectoryPath, (file, success) -> {
+                    String status = success ? "[SUCCESS]" : "[FAILURE]";
+                    System.out.printf("%s Conversion of %s%n", status, file);
+                });
+            }
         } else {
             throw new CommandLine.ParameterException(
                     new CommandLine(this),
@@ -88,6 +316,69 @@ public class Commands implements Runnable {
         }
     }
 
+    /**
+     * @return The Calcite configuration used to build the converters.
+     */
+    FrameworkConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return The SQL dialect the RelNodes are converted to.
+     */
+    SqlDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Writes the metrics report, if one was requested.
+     */
+    private void writeMetrics() {
+        if (metrics == null) {
+            return;
+        }
+
+        try {
+            metrics.write(Paths.get(metricsOutputPath));
+            System.out.printf("Metrics saved to: %s%n", metricsOutputPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing the metrics report.", e);
+        }
+    }
+
+    /**
+     * Records the metrics of a finished file conversion, if a report was requested.
+     *
+     * @param fileMetrics The metrics of the conversion.
+     * @param error       The failure of the conversion, null if it succeeded.
+     */
+    private void recordMetrics(FileMetrics fileMetrics, Throwable error) {
+        fileMetrics.finish(error);
+        if (metrics != null) {
+            metrics.add(fileMetrics);
+        }
+    }
+
+    /**
+     * Runs the conversion server until the JVM is shut down.
+     */
+    private void serve() {
+        try {
+            String serverToken = token != null ? token : ConversionServer.generateToken();
+            ConversionServer server = new ConversionServer(this, host, port, threads, serverToken);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+            if (token == null) {
+                System.out.printf("Server token: %s%n", serverToken);
+            }
+            server.awaitTermination();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error starting the conversion server.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Converts a list of RelNodes to a SQL string.
      *
@@ -95,16 +386,246 @@ public class Commands implements Runnable {
      * @return The resulting SQL string.
      */
     protected String convertRelNodesToSQL(List<RelNode> relNodes) {
-        StringBuilder sqlBuilder = new StringBuilder();
-        RelToSqlConverter converter2Sql = new RelToSqlConverter(dialect);
+        return convertRelNodesToSQL(relNodes, new FileMetrics("relNodes"));
+    }
+
+    /**
+     * Converts a list of RelNodes to a SQL string in the first target dialect, recording the time spent in each
+     * stage.
+     *
+     * @param relNodes    The list of RelNodes to be converted.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The resulting SQL string.
+     */
+    protected String convertRelNodesToSQL(List<RelNode> relNodes, FileMetrics fileMetrics) {
+        Map.Entry<String, SqlDialect> first = getTargetDialects().entrySet().iterator().next();
+        return convertRelNodesToSQL(relNodes, Map.of(first.getKey(), first.getValue()), fileMetrics).get(first.getKey());
+    }
+
+    /**
+     * Converts a list of RelNodes to SQL in several dialects. The RelNodes are optimized once, then unparsed in
+     * each dialect.
+     *
+     * @param relNodes    The list of RelNodes to be converted.
+     * @param dialects    The dialects to convert to, by name.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The resulting SQL strings, by dialect name.
+     */
+    protected Map<String, String> convertRelNodesToSQL(List<RelNode> relNodes, Map<String, SqlDialect> dialects,
+                                                       FileMetrics fileMetrics) {
+        Map<String, StringWriter> writers = new LinkedHashMap<>();
+        dialects.keySet().forEach(dialectName -> writers.put(dialectName, new StringWriter()));
+
+        try {
+            convertRelNodesToSQL(relNodes, dialects, writers, fileMetrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<String, String> sqlByDialect = new LinkedHashMap<>();
+        writers.forEach((dialectName, writer) -> sqlByDialect.put(dialectName, writer.toString()));
+        return sqlByDialect;
+    }
+
+    /**
+     * Converts a list of RelNodes to SQL in several dialects, writing each statement as soon as it is generated.
+     * The RelNodes are optimized once, then unparsed in each dialect, concurrently for large scripts, in the order of
+     * the RelNodes (see {@link #unparseInOrder(List, SqlDialect, FileMetrics, Consumer)}). With shared subplans, the
+     * statements are unparsed one at a time by the calling thread.
+     *
+     * @param relNodes    The list of RelNodes to be converted.
+     * @param dialects    The dialects to convert to, by name.
+     * @param writers     The outputs of the dialects, by name.
+     * @param fileMetrics The metrics of the conversion.
+     * @throws IOException If writing an output fails.
+     */
+    protected void convertRelNodesToSQL(List<RelNode> relNodes, Map<String, SqlDialect> dialects,
+                                        Map<String, ? extends Writer> writers, FileMetrics fileMetrics) throws IOException {
+        fileMetrics.setRelNodeCount(relNodes.size());
+
+        List<RelNode> optimizedRelNodes = optimizeRelNodes(relNodes, fileMetrics);
+        SharedSubplans sharedSubplans = sharedSubplansMode == null
+                ? null
+                : SharedSubplans.extract(optimizedRelNodes, sharedSubplansMode);
+
+        for (Map.Entry<String, SqlDialect> target : dialects.entrySet()) {
+            SqlDialect targetDialect = target.getValue();
+            Writer output = writers.get(target.getKey());
+            Consumer<String> sink = statement -> {
+                long start = System.nanoTime();
+                try {
+                    output.write(statement);
+                    output.write("\n\n"); // Add line breaks between queries
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                fileMetrics.record(ConversionMetrics.WRITE, start);
+            };
+
+            try {
+                if (sharedSubplans == null) {
+                    unparseInOrder(optimizedRelNodes, targetDialect, fileMetrics, sink);
+                } else {
+                    sharedSubplans.toSql(rel -> unparse(rel, targetDialect, fileMetrics), targetDialect, sink);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Unparses RelNodes on the common fork-join pool, one task per RelNode, passing the statements to the sink from
+     * the calling thread in the order of the RelNodes. The statements unparsed ahead of the one being written are
+     * bounded, so that a script with many STOREs is not held in memory at once. Scripts with fewer than
+     * {@value #UNPARSE_CONCURRENT_MIN_STATEMENTS} statements are unparsed by the calling thread, the tasks costing
+     * more than they save.
+     *
+     * @param relNodes    The RelNodes to be unparsed.
+     * @param dialect     The dialect to unparse to.
+     * @param fileMetrics The metrics of the conversion.
+     * @param sink        Receives the SQL statements, in the order of the RelNodes.
+     */
+    private void unparseInOrder(List<RelNode> relNodes, SqlDialect dialect, FileMetrics fileMetrics, Consumer<String> sink) {
+        if (relNodes.size() < UNPARSE_CONCURRENT_MIN_STATEMENTS) {
+            relNodes.forEach(rel -> sink.accept(unparse(rel, dialect, fileMetrics)));
+            return;
+        }
+
+        int window = Math.max(1, ForkJoinPool.getCommonPoolParallelism()) * UNPARSE_WINDOW_PER_PROCESSOR;
+        Deque<ForkJoinTask<String>> pending = new ArrayDeque<>();
+        Iterator<RelNode> remaining = relNodes.iterator();
+        try {
+            while (remaining.hasNext() || !pending.isEmpty()) {
+                while (remaining.hasNext() && pending.size() < window) {
+                    RelNode rel = remaining.next();
+                    pending.add(ForkJoinPool.commonPool().submit(() -> unparse(rel, dialect, fileMetrics)));
+                }
+                sink.accept(pending.removeFirst().join());
+            }
+        } finally {
+            pending.forEach(task -> task.cancel(false));
+        }
+    }
+
+    /**
+     * Applies the enabled optimizers to the RelNodes of a script, as they are before being unparsed.
+     *
+     * @param relNodes    The RelNodes of the script.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The optimized RelNodes, or the given ones if no optimizer is enabled.
+     */
+    private List<RelNode> optimizeRelNodes(List<RelNode> relNodes, FileMetrics fileMetrics) {
+        List<RelNode> optimizedRelNodes = relNodes;
+        PlanOptimizer planOptimizer = getOptimizer();
+        if (planOptimizer != null) {
+            long start = System.nanoTime();
+            optimizedRelNodes = relNodes.stream().map(planOptimizer::optimize).collect(Collectors.toList());
+            fileMetrics.record(ConversionMetrics.OPTIMIZE, start);
+        }
+
+        JoinOrderOptimizer joinOrder = getJoinOrderOptimizer();
+        if (joinOrder != null) {
+            long start = System.nanoTime();
+            optimizedRelNodes = optimizedRelNodes.stream().map(joinOrder::optimize).collect(Collectors.toList());
+            fileMetrics.record(ConversionMetrics.OPTIMIZE, start);
+        }
+        return optimizedRelNodes;
+    }
+
+    /**
+     * Translates Pig scripts and executes their queries on sample data, as translated and optimized, from their
+     * RelNodes and from their SQL. The optimized variants use the enabled optimizers, or all the rules of
+     * {@link PlanOptimizer} if none is enabled. Scripts that fail to translate are reported as failures.
+     *
+     * @param baseDirectory The directory the scripts are named relative to, null to name them by their path.
+     * @param pigFiles      The scripts to execute.
+     * @return The executions.
+     */
+    protected DifferentialExecution executePigFiles(Path baseDirectory, List<Path> pigFiles) {
+        DifferentialExecution execution = new DifferentialExecution(dialect, sampleRows, DIFFERENTIAL_RUNS);
+        PlanOptimizer defaultOptimizer = new PlanOptimizer();
+        for (Path pigFile : pigFiles) {
+            String script = baseDirectory != null ? baseDirectory.relativize(pigFile).toString() : pigFile.toString();
+            FileMetrics fileMetrics = new FileMetrics(script);
+            try {
+                List<RelNode> relNodes = convertPigFileToRel(pigFile.toString(), defaultParameters(pigFile.toString()), fileMetrics);
+                List<RelNode> optimizedRelNodes = getOptimizer() != null || getJoinOrderOptimizer() != null
+                        ? optimizeRelNodes(relNodes, fileMetrics)
+                        : relNodes.stream().map(defaultOptimizer::optimize).collect(Collectors.toList());
+                execution.add(script, relNodes, optimizedRelNodes);
+            } catch (Exception e) {
+                logger.warn("Error executing file: {}", pigFile, e);
+                execution.addFailure(script, e);
+            }
+        }
+        return execution;
+    }
 
-        for (RelNode rel : relNodes) {
-            SqlNode sqlNode = converter2Sql.visitRoot(rel).asStatement();
-            SqlPrettyWriter writer = new SqlPrettyWriter(dialect);
-            sqlBuilder.append(writer.format(sqlNode)).append("\n\n"); // Add line breaks between queries
+    /**
+     * Translates Pig scripts and analyzes their queries, as they would be unparsed with the current options.
+     * Scripts that fail to translate are reported as failures.
+     *
+     * @param baseDirectory The directory the scripts are named relative to, null to name them by their path.
+     * @param pigFiles      The scripts to analyze.
+     * @return The analysis.
+     */
+    protected PlanAnalyzer analyzePigFiles(Path baseDirectory, List<Path> pigFiles) {
+        PlanAnalyzer analyzer = new PlanAnalyzer(getCatalog());
+        for (Path pigFile : pigFiles) {
+            String script = baseDirectory != null ? baseDirectory.relativize(pigFile).toString() : pigFile.toString();
+            FileMetrics fileMetrics = new FileMetrics(script);
+            try {
+                List<RelNode> relNodes = convertPigFileToRel(pigFile.toString(), defaultParameters(pigFile.toString()), fileMetrics);
+                analyzer.add(script, optimizeRelNodes(relNodes, fileMetrics));
+            } catch (Exception e) {
+                logger.warn("Error analyzing file: {}", pigFile, e);
+                analyzer.addFailure(script, e);
+            }
+        }
+        return analyzer;
+    }
+
+    /**
+     * Converts a RelNode to a pretty-printed SQL statement, with the unparser of the dialect of the current thread.
+     *
+     * @param rel         The RelNode to be converted.
+     * @param dialect     The target dialect.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The SQL statement.
+     */
+    private String unparse(RelNode rel, SqlDialect dialect, FileMetrics fileMetrics) {
+        Map<SqlDialect, DialectUnparser> unparsers = UNPARSERS.get();
+        DialectUnparser unparser = unparsers.computeIfAbsent(dialect, DialectUnparser::new);
+        try {
+            long start = System.nanoTime();
+            SqlNode sqlNode = unparser.converter2Sql.visitRoot(rel).asStatement();
+            fileMetrics.record(ConversionMetrics.REL_TO_SQL, start);
+
+            start = System.nanoTime();
+            unparser.prettyWriter.reset();
+            String sql = unparser.prettyWriter.format(sqlNode);
+            fileMetrics.record(ConversionMetrics.FORMAT, start);
+            return sql;
+        } catch (RuntimeException e) {
+            // Do not reuse an unparser left in the middle of a statement
+            unparsers.remove(dialect);
+            throw e;
         }
+    }
+
+    /**
+     * The converter and pretty-writer of a dialect, which are not thread-safe.
+     */
+    private static final class DialectUnparser {
 
-        return sqlBuilder.toString();
+        final RelToSqlConverter converter2Sql;
+        final SqlPrettyWriter prettyWriter;
+
+        DialectUnparser(SqlDialect dialect) {
+            this.converter2Sql = new RelToSqlConverter(dialect);
+            this.prettyWriter = new SqlPrettyWriter(dialect);
+        }
     }
 
     /**
@@ -114,92 +635,1182 @@ public class Commands implements Runnable {
      * @param outputFile Path where the converted SQL should be saved.
      */
     protected void convertPigFileToSQL(String inputFile, String outputFile) {
+        FileMetrics fileMetrics = new FileMetrics(inputFile);
         try {
-            logger.debug("inputFile : {}", inputFile);
-            logger.debug("outputFile : {}", outputFile);
+            convertPigFileToSQL(inputFile, outputFile, fileMetrics);
+            recordMetrics(fileMetrics, null);
+        } catch (RuntimeException e) {
+            recordMetrics(fileMetrics, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Converts a given Pig file to SQL and streams it to a specified output file, recording the time spent in
+     * each stage. When several dialects are requested, one file per dialect is written, named after the output
+     * file (see {@link #dialectOutputFile(String, String)}). The SQL is streamed to temporary files next to the
+     * output files, moved into place once the whole script is converted, so that a failed conversion leaves the
+     * previous output files, if any, untouched.
+     *
+     * @param inputFile   Path to the Pig file to be converted.
+     * @param outputFile  Path where the converted SQL should be saved.
+     * @param fileMetrics The metrics of the conversion.
+     */
+    protected void convertPigFileToSQL(String inputFile, String outputFile, FileMetrics fileMetrics) {
+        logger.debug("outputFile : {}", outputFile);
+
+        // Temporary file of each output file
+        Map<Path, Path> temporaryFiles = new LinkedHashMap<>();
+        try {
+            convertPigFileToSQL(inputFile, dialectName -> {
+                Path target = Paths.get(dialectOutputFile(outputFile, dialectName)).toAbsolutePath();
+                Path temporaryFile = Files.createTempFile(target.getParent(), "." + target.getFileName() + ".", ".tmp");
+                temporaryFiles.put(target, temporaryFile);
+                return Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8);
+            }, fileMetrics);
+            moveIntoPlace(temporaryFiles);
+        } finally {
+            deleteTemporaryFiles(temporaryFiles.values());
+        }
 
-            Map<String, String> params = new HashMap<>();
-            params.put("input", inputFile);
-            params.put("output", "outputFile");
+        for (String dialectName : getTargetDialects().keySet()) {
+            fileMetrics.addOutputBytes(new File(dialectOutputFile(outputFile, dialectName)).length());
+        }
+    }
 
-            PigConverter converter2Rel = create(config);
-            List<RelNode> relList = converter2Rel.pigScript2Rel(inputFile, params, true);
+    /**
+     * Moves complete temporary files to their output files, atomically where the file system supports it. The
+     * files of a conversion that timed out are not moved (see {@link #runWithTimeout}).
+     *
+     * @param temporaryFiles The temporary file of each output file.
+     * @throws IllegalStateException If the conversion run by the current thread timed out.
+     */
+    private void moveIntoPlace(Map<Path, Path> temporaryFiles) {
+        CompletableFuture<Boolean> conversion = runningConversion.get();
+        if (conversion == null) {
+            moveFiles(temporaryFiles);
+            return;
+        }
 
-            String sql = convertRelNodesToSQL(relList);
+        // The timeout cannot fail the conversion while its files are being moved
+        synchronized (conversion) {
+            if (conversion.isDone()) {
+                throw new IllegalStateException("The conversion timed out, its output is discarded.");
+            }
+            moveFiles(temporaryFiles);
+        }
+    }
 
-            logger.debug("Sql result : {}", sql);
+    private static void moveFiles(Map<Path, Path> temporaryFiles) {
+        for (Map.Entry<Path, Path> file : temporaryFiles.entrySet()) {
+            try {
+                try {
+                    Files.move(file.getValue(), file.getKey(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(file.getValue(), file.getKey(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error writing " + file.getKey(), e);
+            }
+        }
+    }
 
-            try (BufferedWriter outputWriter = new BufferedWriter(new FileWriter(outputFile))) {
-                outputWriter.write(sql);
+    private static void deleteTemporaryFiles(Collection<Path> temporaryFiles) {
+        for (Path temporaryFile : temporaryFiles) {
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException e) {
+                logger.debug("Cannot delete {}", temporaryFile, e);
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Error converting Pig file to SQL.", e);
         }
     }
 
     /**
-     * Converts a given Pig script string to SQL.
+     * Converts a given Pig file to SQL, reusing the cached result when the script and its settings are unchanged.
      *
-     * @param pig The Pig script string.
+     * @param inputFile Path to the Pig file to be converted.
      * @return The converted SQL string.
      */
-    protected String convertPigStringToSQL(String pig) {
-        String sql;
-        logger.debug("Pig String : {}", pig);
+    protected String convertPigFileToSQL(String inputFile) {
+        return convertPigFileToSQL(inputFile, new FileMetrics(inputFile));
+    }
 
-        try {
-            PigConverter converter2Rel = create(config);
-            List<RelNode> relList = converter2Rel.pigQuery2Rel(pig);
+    /**
+     * Converts a given Pig file to SQL in the first target dialect, recording the time spent in each stage.
+     *
+     * @param inputFile   Path to the Pig file to be converted.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The converted SQL string.
+     */
+    protected String convertPigFileToSQL(String inputFile, FileMetrics fileMetrics) {
+        return convertPigFileToSQLByDialect(inputFile, fileMetrics).values().iterator().next();
+    }
 
-            sql = convertRelNodesToSQL(relList);
-        } catch (Exception e) {
-            throw new RuntimeException("Error converting Pig string to SQL.", e);
-        }
+    /**
+     * Converts a given Pig file to SQL in every target dialect.
+     *
+     * @param inputFile   Path to the Pig file to be converted.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The converted SQL strings, by dialect name.
+     */
+    protected Map<String, String> convertPigFileToSQLByDialect(String inputFile, FileMetrics fileMetrics) {
+        return convertPigFileToSQLByDialect(inputFile, defaultParameters(inputFile), fileMetrics);
+    }
 
-        logger.debug("Sql result : {}", sql);
+    /**
+     * Converts a given Pig file to SQL in every target dialect, with the given parameter values.
+     *
+     * @param inputFile   Path to the Pig file to be converted.
+     * @param params      The values of the Pig parameters.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The converted SQL strings, by dialect name.
+     */
+    protected Map<String, String> convertPigFileToSQLByDialect(String inputFile, Map<String, String> params,
+                                                               FileMetrics fileMetrics) {
+        Map<String, StringWriter> writers = new LinkedHashMap<>();
+        convertPigFileToSQL(inputFile, params,
+                dialectName -> writers.computeIfAbsent(dialectName, name -> new StringWriter()), fileMetrics);
 
-        return sql;
+        Map<String, String> sqlByDialect = new LinkedHashMap<>();
+        writers.forEach((dialectName, writer) -> sqlByDialect.put(dialectName, writer.toString()));
+        return sqlByDialect;
     }
 
+    /**
+     * Opens the output of a dialect.
+     */
+    @FunctionalInterface
+    protected interface SqlOutputs {
+        Writer open(String dialectName) throws IOException;
+    }
 
+    /**
+     * Converts a given Pig file to SQL in every target dialect, streaming each statement to the output of its
+     * dialect. The script is parsed and translated to RelNodes once, whatever the number of dialects, and the
+     * cached results are reused when all dialects are cached.
+     *
+     * @param inputFile   Path to the Pig file to be converted.
+     * @param outputs     Opens the output of each dialect, the outputs being closed once the conversion is done.
+     * @param fileMetrics The metrics of the conversion.
+     */
+    protected void convertPigFileToSQL(String inputFile, SqlOutputs outputs, FileMetrics fileMetrics) {
+        convertPigFileToSQL(inputFile, defaultParameters(inputFile), outputs, fileMetrics);
+    }
 
     /**
-     * Converts all Pig files in a given directory to SQL and saves them in a specified output directory.
+     * Converts a given Pig file to SQL in every target dialect with the given parameter values, streaming each
+     * statement to the output of its dialect.
      *
-     * @param inputDir  Directory containing Pig files to convert.
-     * @param outputDir Directory to store the converted SQL files.
-     * @return A map containing the names of the processed files and a boolean indicating the success of the conversion.
+     * @param inputFile   Path to the Pig file to be converted.
+     * @param params      The values of the Pig parameters.
+     * @param outputs     Opens the output of each dialect, the outputs being closed once the conversion is done.
+     * @param fileMetrics The metrics of the conversion.
      */
-    protected Map<String, Boolean> convertPigDirectoryToSQL(String inputDir, String outputDir) {
-        logger.debug("inputFile : {}", inputDir);
-        logger.debug("outputFile : {}", outputDir);
+    protected void convertPigFileToSQL(String inputFile, Map<String, String> params, SqlOutputs outputs,
+                                       FileMetrics fileMetrics) {
+        try {
+            logger.debug("inputFile : {}", inputFile);
 
-        File inputDirectory = new File(inputDir);
-        File outputDirectory = new File(outputDir);
+            Map<String, SqlDialect> dialects = getTargetDialects();
+            ConversionCache conversionCache = getCache();
+            Map<String, String> cacheKeys = new HashMap<>();
+            if (conversionCache != null) {
+                long start = System.nanoTime();
+                Map<String, String> cachedSql = new LinkedHashMap<>();
+                for (String dialectName : dialects.keySet()) {
+                    String cacheKey = conversionCache.key(Paths.get(inputFile), params, conversionSettings(dialectName));
+                    cacheKeys.put(dialectName, cacheKey);
+                    conversionCache.get(cacheKey).ifPresent(sql -> cachedSql.put(dialectName, sql));
+                }
+                fileMetrics.record(ConversionMetrics.CACHE, start);
 
-        if (!inputDirectory.exists() || !inputDirectory.isDirectory()) {
-            throw new RuntimeException("Input directory doesn't exist or is not a directory: " + inputDir);
-        }
+                if (cachedSql.size() == dialects.size()) {
+                    logger.debug("Cache hit for {}", inputFile);
+                    fileMetrics.setCached(true);
+                    for (Map.Entry<String, String> sql : cachedSql.entrySet()) {
+                        try (Writer output = outputs.open(sql.getKey())) {
+                            output.write(sql.getValue());
+                        }
+                    }
+                    return;
+                }
+            }
 
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdir();
-        }
+            List<RelNode> relList = convertPigFileToRel(inputFile, params, fileMetrics);
 
-        File[] pigFiles = inputDirectory.listFiles((dir, name) -> name.endsWith(".pig"));
-        Map<String, Boolean> conversionResults = new HashMap<>();
+            // The cache stores whole results, keep a copy of the output only when it is enabled
+            Map<String, StringWriter> copies = new HashMap<>();
+            Map<String, Writer> writers = new LinkedHashMap<>();
+            try {
+                for (String dialectName : dialects.keySet()) {
+                    Writer output = outputs.open(dialectName);
+                    if (conversionCache != null) {
+                        StringWriter copy = new StringWriter();
+                        copies.put(dialectName, copy);
+                        output = new TeeWriter(output, copy);
+                    }
+                    writers.put(dialectName, output);
+                }
 
-        for (File pigFile : pigFiles) {
-            String outputFileName = pigFile.getName().replace(".pig", ".sql");
-            File outputFile = new File(outputDirectory, outputFileName);
+                convertRelNodesToSQL(relList, dialects, writers, fileMetrics);
+            } finally {
+                for (Writer writer : writers.values()) {
+                    writer.close();
+                }
+            }
 
-            try {
-                convertPigFileToSQL(pigFile.getAbsolutePath(), outputFile.getAbsolutePath());
-                conversionResults.put(pigFile.getName(), true);
-            } catch (Exception e) {
-                conversionResults.put(pigFile.getName(), false);
+            if (conversionCache != null) {
+                copies.forEach((dialectName, copy) -> conversionCache.put(cacheKeys.get(dialectName), copy.toString()));
             }
+        } catch (Exception e) {
+            throw new RuntimeException("Error converting Pig file to SQL.", e);
         }
+    }
 
-        return conversionResults;
+    /**
+     * Translates a given Pig file to RelNodes, mapping its LOADed paths to partitioned tables if a partition
+     * mapping is given. With {@code --split-components}, the independent components of a large script are
+     * translated concurrently (see {@link #translateComponents(String, ScriptTranslator)}).
+     *
+     * @param inputFile   Path to the Pig file to be translated.
+     * @param params      The values of the Pig parameters.
+     * @param fileMetrics The metrics of the conversion.
+     * @return The RelNodes, one per STORE.
+     * @throws Exception If the converter cannot be created, or the file cannot be read or translated.
+     */
+    private List<RelNode> convertPigFileToRel(String inputFile, Map<String, String> params, FileMetrics fileMetrics)
+            throws Exception {
+        long start = System.nanoTime();
+        PartitionMapping partitions = getPartitionMapping();
+        String script = partitions != null || splitComponents
+                ? Files.readString(Paths.get(inputFile), StandardCharsets.UTF_8)
+                : null;
+
+        List<RelNode> relList = splitComponents
+                ? translateComponents(script, component -> translateScript(component, params))
+                : null;
+        if (relList == null) {
+            PigConverter converter2Rel = createConverter();
+            relList = converter2Rel.pigScript2Rel(inputFile, params, true);
+        }
+        if (partitions != null) {
+            relList = partitions.apply(relList, PartitionMapping.loadPaths(script, params));
+        }
+        fileMetrics.record(ConversionMetrics.PIG_TO_REL, start);
+        return relList;
+    }
+
+    /**
+     * Translates a Pig script on its own converter.
+     */
+    @FunctionalInterface
+    private interface ScriptTranslator {
+        List<RelNode> translate(String script) throws Exception;
+    }
+
+    /**
+     * Translates the independent components of a script concurrently on up to {@code threads} threads, each on its own
+     * converter (see {@link ScriptComponents}). The RelNodes are returned component by component, in the order of
+     * their first STORE, which may differ from the order of the translation of the whole script.
+     *
+     * @param script     The text of the Pig script.
+     * @param translator Translates the script of a component.
+     * @return The RelNodes of the components, or null if the script is too small or cannot be split, or if the
+     * translation of a component fails, in which case the whole script should be translated.
+     */
+    private List<RelNode> translateComponents(String script, ScriptTranslator translator) {
+        ScriptComponents components = ScriptComponents.of(script);
+        if (!components.isSplit() || components.getStatementCount() < SPLIT_MIN_STATEMENTS) {
+            return null;
+        }
+
+        ExecutorService executor = getComponentExecutor();
+        List<Future<List<RelNode>>> tasks = components.getScripts().stream()
+                .map(component -> executor.submit(() -> translator.translate(component)))
+                .collect(Collectors.toList());
+        List<RelNode> relList = new ArrayList<>();
+        try {
+            for (Future<List<RelNode>> task : tasks) {
+                relList.addAll(task.get());
+            }
+        } catch (ExecutionException e) {
+            logger.debug("Cannot translate the components of the script separately, translating it as a whole", e);
+            tasks.forEach(task -> task.cancel(false));
+            return null;
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while translating the components of the script.", e);
+        }
+        logger.debug("Translated {} components concurrently", tasks.size());
+        return relList;
+    }
+
+    /**
+     * Translates a Pig script with the given parameter values, from a temporary file.
+     */
+    private List<RelNode> translateScript(String script, Map<String, String> params) throws Exception {
+        Path file = Files.createTempFile("component", ".pig");
+        try {
+            Files.writeString(file, script, StandardCharsets.UTF_8);
+            return create(config).pigScript2Rel(file.toString(), params, true);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Parameter values of a file conversion: {@code input} is the path of the file and {@code output} the literal
+     * {@code outputFile}.
+     *
+     * @param inputFile Path to the Pig file to be converted.
+     * @return The parameter values, which may be modified.
+     */
+    private static Map<String, String> defaultParameters(String inputFile) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("input", inputFile);
+        params.put("output", "outputFile");
+        return params;
+    }
+
+    /**
+     * Converts a given Pig file to SQL once per parameter set, each set overriding the default parameters.
+     * <p>
+     * Rather than translating the script for every set, the parameter sets are grouped by the shape of their values
+     * (see {@link ParameterTemplate}) and the script is translated once per group with sentinel values. The SQL of
+     * each set is then rendered from this template. The template of a group is only used if it keeps every use of the
+     * parameters differing between its sets (see {@link ParameterTemplate#isSound(String, Map)}) and its rendering for
+     * the first set of the group matches the full conversion of that set; otherwise each set of the group is converted
+     * on its own. Parameters declared with {@code %declare} in the script keep their declared value, as in Pig;
+     * use {@code %default} for parameters meant to be overridden.
+     *
+     * @param inputFile     Path to the Pig file to be converted.
+     * @param outputFile    Path of the output files: {@code $name} and {@code ${name}} are replaced by the parameter
+     *                      values; without any parameter reference, the index of the set is inserted before the
+     *                      extension, e.g. {@code out.1.sql}.
+     * @param parameterSets The parameter sets.
+     * @return The paths of the written files, in parameter set order.
+     */
+    protected List<String> convertPigFileToSQL(String inputFile, String outputFile, List<Map<String, String>> parameterSets) {
+        FileMetrics fileMetrics = new FileMetrics(inputFile);
+        try {
+            List<String> outputFiles = convertPigFileToSQL(inputFile, outputFile, parameterSets, fileMetrics);
+            recordMetrics(fileMetrics, null);
+            return outputFiles;
+        } catch (RuntimeException e) {
+            recordMetrics(fileMetrics, e);
+            throw e;
+        }
+    }
+
+    private List<String> convertPigFileToSQL(String inputFile, String outputFile, List<Map<String, String>> parameterSets,
+                                             FileMetrics fileMetrics) {
+        List<Map<String, String>> params = new ArrayList<>();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < parameterSets.size(); i++) {
+            Map<String, String> setParams = defaultParameters(inputFile);
+            setParams.putAll(parameterSets.get(i));
+            params.add(setParams);
+            groups.computeIfAbsent(ParameterTemplate.shapeOf(setParams), shape -> new ArrayList<>()).add(i);
+        }
+
+        List<String> outputFiles = new ArrayList<>();
+        for (int i = 0; i < params.size(); i++) {
+            outputFiles.add(parameterSetOutputFile(outputFile, params.get(i), i + 1));
+        }
+
+        Map<String, Integer> uses;
+        try {
+            uses = ParameterTemplate.usesOf(Files.readString(Paths.get(inputFile), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + inputFile, e);
+        }
+
+        for (List<Integer> group : groups.values()) {
+            Map<String, String> firstParams = params.get(group.get(0));
+            Map<String, String> firstSql = convertPigFileToSQLByDialect(inputFile, firstParams, fileMetrics);
+            writeParameterSetSql(outputFiles.get(group.get(0)), firstSql, fileMetrics);
+            if (group.size() == 1) {
+                continue;
+            }
+
+            ParameterTemplate template = new ParameterTemplate(group.stream().map(params::get).collect(Collectors.toList()));
+            Map<String, String> templateSql = null;
+            try {
+                templateSql = convertPigFileToSQLByDialect(inputFile, template.getSentinelParameters(), fileMetrics);
+            } catch (RuntimeException e) {
+                logger.debug("No template for the parameter sets shaped as {}", firstParams, e);
+            }
+
+            if (templateSql != null && isSound(template, templateSql, uses)
+                    && firstSql.equals(render(template, templateSql, firstParams))) {
+                for (int i : group.subList(1, group.size())) {
+                    writeParameterSetSql(outputFiles.get(i), render(template, templateSql, params.get(i)), fileMetrics);
+                }
+            } else {
+                logger.debug("Template mismatch, converting the parameter sets shaped as {} one by one", firstParams);
+                for (int i : group.subList(1, group.size())) {
+                    writeParameterSetSql(outputFiles.get(i),
+                            convertPigFileToSQLByDialect(inputFile, params.get(i), fileMetrics), fileMetrics);
+                }
+            }
+        }
+        return outputFiles;
+    }
+
+    private static boolean isSound(ParameterTemplate template, Map<String, String> templateSql, Map<String, Integer> uses) {
+        return templateSql.values().stream().allMatch(sql -> template.isSound(sql, uses));
+    }
+
+    private static Map<String, String> render(ParameterTemplate template, Map<String, String> templateSql,
+                                              Map<String, String> params) {
+        Map<String, String> sqlByDialect = new LinkedHashMap<>();
+        templateSql.forEach((dialectName, sql) -> sqlByDialect.put(dialectName, template.render(sql, params)));
+        return sqlByDialect;
+    }
+
+    /**
+     * Writes the SQL of a parameter set, one file per dialect, through temporary files moved into place once all of
+     * them are written.
+     */
+    private void writeParameterSetSql(String outputFile, Map<String, String> sqlByDialect, FileMetrics fileMetrics) {
+        long start = System.nanoTime();
+        Map<Path, Path> temporaryFiles = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> sql : sqlByDialect.entrySet()) {
+                Path path = Paths.get(dialectOutputFile(outputFile, sql.getKey())).toAbsolutePath();
+                try {
+                    Files.createDirectories(path.getParent());
+                    Path temporaryFile = Files.createTempFile(path.getParent(), "." + path.getFileName() + ".", ".tmp");
+                    temporaryFiles.put(path, temporaryFile);
+                    Files.writeString(temporaryFile, sql.getValue(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error writing " + path, e);
+                }
+            }
+            moveIntoPlace(temporaryFiles);
+        } finally {
+            deleteTemporaryFiles(temporaryFiles.values());
+        }
+        fileMetrics.record(ConversionMetrics.WRITE, start);
+        temporaryFiles.keySet().forEach(path -> fileMetrics.addOutputBytes(path.toFile().length()));
+    }
+
+    /**
+     * Names the output file of a parameter set.
+     *
+     * @param outputFile Path of the requested output file, possibly referencing parameters.
+     * @param params     The values of the parameters of the set.
+     * @param index      The index of the set, starting at 1.
+     * @return The path of the output file of the set.
+     */
+    protected static String parameterSetOutputFile(String outputFile, Map<String, String> params, int index) {
+        Matcher reference = PARAMETER_REFERENCE_PATTERN.matcher(outputFile);
+        if (!reference.find()) {
+            int extension = outputFile.lastIndexOf('.');
+            int separator = Math.max(outputFile.lastIndexOf('/'), outputFile.lastIndexOf(File.separatorChar));
+            return extension > separator
+                    ? outputFile.substring(0, extension) + "." + index + outputFile.substring(extension)
+                    : outputFile + "." + index;
+        }
+
+        reference.reset();
+        StringBuilder path = new StringBuilder();
+        while (reference.find()) {
+            String name = reference.group(1) != null ? reference.group(1) : reference.group(2);
+            String value = params.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("The output file references the unknown parameter " + name);
+            }
+            reference.appendReplacement(path, Matcher.quoteReplacement(value));
+        }
+        reference.appendTail(path);
+        return path.toString();
+    }
+
+    /**
+     * Writer duplicating its output to a second writer.
+     */
+    private static final class TeeWriter extends Writer {
+
+        private final Writer first;
+        private final Writer second;
+
+        TeeWriter(Writer first, Writer second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            first.write(buffer, offset, length);
+            second.write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            } finally {
+                second.close();
+            }
+        }
+    }
+
+    /**
+     * Describes every setting affecting the generated SQL, so that cached conversions are only reused with the
+     * same settings.
+     *
+     * @param dialectName The name of the dialect the SQL is generated in.
+     * @return The description of the conversion settings.
+     */
+    protected String conversionSettings(String dialectName) {
+        return "version=" + VERSION +
+                ";calcite=" + PigConverter.class.getPackage().getImplementationVersion() +
+                ";dialect=" + dialectName +
+                ";optimize=" + (optimize ? String.valueOf(optimizeRules) : "false") +
+                ";sharedSubplans=" + sharedSubplansMode +
+                ";splitComponents=" + splitComponents +
+                ";catalog=" + (catalogPath == null ? "none" : getCatalog().getDigest()) +
+                ";partitions=" + (partitionMappingPath == null ? "none" : getPartitionMapping().getDigest());
+    }
+
+    /**
+     * Names the output file of a dialect. Without {@code --dialects}, the output file is used as is; otherwise
+     * the dialect name is inserted before the extension, e.g. {@code out.hive.sql}.
+     *
+     * @param outputFile  Path of the requested output file.
+     * @param dialectName The name of the dialect.
+     * @return The path of the output file of the dialect.
+     */
+    protected String dialectOutputFile(String outputFile, String dialectName) {
+        if (dialectNames == null) {
+            return outputFile;
+        }
+
+        int extension = outputFile.lastIndexOf('.');
+        int separator = Math.max(outputFile.lastIndexOf('/'), outputFile.lastIndexOf(File.separatorChar));
+        return extension > separator
+                ? outputFile.substring(0, extension) + "." + dialectName + outputFile.substring(extension)
+                : outputFile + "." + dialectName;
+    }
+
+    /**
+     * @return The dialects to generate SQL in, by name. Defaults to the ANSI dialect.
+     */
+    protected Map<String, SqlDialect> getTargetDialects() {
+        return dialectNames == null ? Map.of(SqlDialects.DEFAULT, dialect) : SqlDialects.resolve(dialectNames);
+    }
+
+    /**
+     * Checks that the target dialects can emit the shared subplans in the requested mode.
+     *
+     * @throws IllegalArgumentException If a dialect is unknown, or has no temporary tables in
+     *                                  {@link SharedSubplans.Mode#TEMP_TABLE} mode.
+     */
+    private void checkSharedSubplansMode() {
+        for (Map.Entry<String, SqlDialect> target : getTargetDialects().entrySet()) {
+            if (sharedSubplansMode == SharedSubplans.Mode.TEMP_TABLE && !SqlDialects.supportsTemporaryTables(target.getValue())) {
+                throw new IllegalArgumentException("--shared-subplans temp_table is not supported by the "
+                        + target.getKey() + " dialect, use cte instead.");
+            }
+        }
+    }
+
+    /**
+     * @return The plan optimizer, or null if optimization is disabled.
+     */
+    private synchronized PlanOptimizer getOptimizer() {
+        if (optimizer == null && optimize) {
+            optimizer = optimizeRules == null ? new PlanOptimizer() : new PlanOptimizer(optimizeRules);
+        }
+        return optimizer;
+    }
+
+    /**
+     * @return The join order optimizer, or null if no catalog is given.
+     */
+    private synchronized JoinOrderOptimizer getJoinOrderOptimizer() {
+        if (joinOrderOptimizer == null && catalogPath != null) {
+            joinOrderOptimizer = new JoinOrderOptimizer(getCatalog());
+        }
+        return joinOrderOptimizer;
+    }
+
+    /**
+     * @return The table catalog, or null if none is given.
+     */
+    synchronized TableCatalog getCatalog() {
+        if (catalog == null && catalogPath != null) {
+            try {
+                catalog = TableCatalog.read(Paths.get(catalogPath));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading the catalog " + catalogPath, e);
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * @return The partition mapping, or null if none is given.
+     */
+    private synchronized PartitionMapping getPartitionMapping() {
+        if (partitionMapping == null && partitionMappingPath != null) {
+            try {
+                partitionMapping = PartitionMapping.read(Paths.get(partitionMappingPath));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading the partition mapping " + partitionMappingPath, e);
+            }
+        }
+        return partitionMapping;
+    }
+
+    /**
+     * @return The conversion cache, or null if no cache directory is configured.
+     */
+    private synchronized ConversionCache getCache() {
+        if (cache == null && cacheDirectoryPath != null) {
+            cache = new ConversionCache(Paths.get(cacheDirectoryPath), cacheMaxSizeMb * 1024 * 1024);
+        }
+        return cache;
+    }
+
+    /**
+     * Converts a given Pig script string to SQL, in the first target dialect.
+     *
+     * @param pig The Pig script string.
+     * @return The converted SQL string.
+     */
+    protected String convertPigStringToSQL(String pig) {
+        return convertPigStringToSQLByDialect(pig).values().iterator().next();
+    }
+
+    /**
+     * Converts a given Pig script string to SQL in every target dialect, translating it to RelNodes once.
+     *
+     * @param pig The Pig script string.
+     * @return The converted SQL strings, by dialect name.
+     */
+    protected Map<String, String> convertPigStringToSQLByDialect(String pig) {
+        Map<String, String> sqlByDialect;
+        logger.debug("Pig String : {}", pig);
+
+        try {
+            List<RelNode> relList = splitComponents
+                    ? translateComponents(pig, component -> create(config).pigQuery2Rel(component))
+                    : null;
+            if (relList == null) {
+                PigConverter converter2Rel = create(config);
+                relList = converter2Rel.pigQuery2Rel(pig);
+            }
+            PartitionMapping partitions = getPartitionMapping();
+            if (partitions != null) {
+                relList = partitions.apply(relList, PartitionMapping.loadPaths(pig, Map.of()));
+            }
+
+            sqlByDialect = convertRelNodesToSQL(relList, getTargetDialects(), new FileMetrics("string"));
+        } catch (Exception e) {
+            throw new RuntimeException("Error converting Pig string to SQL.", e);
+        }
+
+        logger.debug("Sql result : {}", sqlByDialect);
+
+        return sqlByDialect;
+    }
+
+
+
+    /**
+     * Converts all Pig files in a given directory to SQL and saves them in a specified output directory.
+     *
+     * @param inputDir  Directory containing Pig files to convert.
+     * @param outputDir Directory to store the converted SQL files.
+     * @return A map containing the names of the processed files and a boolean indicating the success of the conversion.
+     */
+    protected Map<String, Boolean> convertPigDirectoryToSQL(String inputDir, String outputDir) {
+        return convertPigDirectoryToSQL(inputDir, outputDir, (file, success) -> {
+        });
+    }
+
+    /**
+     * Converts all Pig files in a given directory to SQL, using up to {@code threads} concurrent conversions.
+     * Each result is passed to the listener as soon as the file completes, from the thread that completed it.
+     *
+     * @param inputDir  Directory containing Pig files to convert.
+     * @param outputDir Directory to store the converted SQL files.
+     * @param listener  Callback receiving the relative name of each processed file and the success of its conversion.
+     * @return A map, sorted by file name, containing the processed files and a boolean indicating the success of the conversion.
+     */
+    protected Map<String, Boolean> convertPigDirectoryToSQL(String inputDir, String outputDir,
+                                                            BiConsumer<String, Boolean> listener) {
+        logger.debug("inputFile : {}", inputDir);
+        logger.debug("outputFile : {}", outputDir);
+
+        File inputDirectory = new File(inputDir);
+        File outputDirectory = new File(outputDir);
+
+        if (!inputDirectory.exists() || !inputDirectory.isDirectory()) {
+            throw new RuntimeException("Input directory doesn't exist or is not a directory: " + inputDir);
+        }
+
+        if (!outputDirectory.exists()) {
+            outputDirectory.mkdirs();
+        }
+
+        Path inputPath = inputDirectory.toPath();
+        List<Path> pigFiles = listPigFiles(inputPath);
+        if (dedupe) {
+            return convertDeduplicatedPigFiles(inputPath, pigFiles, outputDirectory, listener);
+        }
+
+        Map<String, Boolean> conversionResults = new ConcurrentSkipListMap<>();
+        List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+
+        ExecutorService executor = createExecutor();
+        ScheduledExecutorService watchdog = createWatchdog();
+
+        try {
+            for (Path pigFile : pigFiles) {
+                String relativeName = inputPath.relativize(pigFile).toString();
+                File outputFile = new File(outputDirectory, relativeName.replaceAll("\\.pig$", ".sql"));
+
+                FileMetrics fileMetrics = new FileMetrics(relativeName);
+                CompletableFuture<Boolean> result = new CompletableFuture<>();
+                result.whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        logger.debug("Conversion of {} failed", relativeName, error);
+                    }
+                    recordMetrics(fileMetrics, error);
+                    conversionResults.put(relativeName, error == null);
+                    listener.accept(relativeName, error == null);
+                });
+                pending.add(result);
+
+                executor.execute(() -> runWithTimeout(result, watchdog, () -> {
+                    outputFile.getParentFile().mkdirs();
+                    convertPigFileToSQL(pigFile.toAbsolutePath().toString(), outputFile.getAbsolutePath(), fileMetrics);
+                }));
+            }
+
+            // Failures are already recorded by each future, only wait for all of them to complete
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                    .exceptionally(error -> null)
+                    .join();
+        } finally {
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+
+        return conversionResults;
+    }
+
+    /**
+     * Watches a directory already converted, re-converting the scripts whose file or imported files change until
+     * the thread is interrupted. Changed scripts are re-converted by the watching thread, which creates the
+     * converter of the next change while waiting for it.
+     *
+     * @param inputDir  Directory containing Pig files to convert.
+     * @param outputDir Directory to store the converted SQL files.
+     * @param listener  Callback receiving the relative name of each processed file and the success of its conversion.
+     */
+    protected void watchPigDirectory(String inputDir, String outputDir, BiConsumer<String, Boolean> listener) {
+        Path inputPath = Paths.get(inputDir).toAbsolutePath().normalize();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(inputPath, listPigFiles(inputPath), recursive, WATCH_DEBOUNCE_MILLIS)) {
+            warmUpConverter();
+            watcher.run(pigFiles -> {
+                long start = System.nanoTime();
+                for (Path pigFile : pigFiles) {
+                    String relativeName = inputPath.relativize(pigFile).toString();
+                    File outputFile = new File(outputDir, relativeName.replaceAll("\\.pig$", ".sql"));
+                    FileMetrics fileMetrics = new FileMetrics(relativeName);
+                    Throwable error = null;
+                    try {
+                        outputFile.getParentFile().mkdirs();
+                        convertPigFileToSQL(pigFile.toString(), outputFile.getAbsolutePath(), fileMetrics);
+                    } catch (RuntimeException e) {
+                        logger.debug("Conversion of {} failed", relativeName, e);
+                        error = e;
+                    }
+                    recordMetrics(fileMetrics, error);
+                    listener.accept(relativeName, error == null);
+                }
+                System.out.printf("Re-converted %d file(s) in %d ms%n", pigFiles.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                writeMetrics();
+                warmUpConverter();
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error watching " + inputDir, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates a Pig converter, taking the converter created ahead of use by this thread if any. A converter
+     * accumulates the scripts it translates, it is only used once.
+     *
+     * @return A new converter.
+     * @throws Exception If the converter cannot be created.
+     */
+    private PigConverter createConverter() throws Exception {
+        PigConverter spare = spareConverter.get();
+        if (spare != null) {
+            spareConverter.remove();
+            return spare;
+        }
+        return create(config);
+    }
+
+    /**
+     * Creates the converter of the next conversion of this thread, so that its creation is not part of the latency
+     * of the conversion.
+     */
+    private void warmUpConverter() {
+        if (spareConverter.get() == null) {
+            try {
+                spareConverter.set(create(config));
+            } catch (Exception e) {
+                logger.debug("Cannot create a converter ahead of use", e);
+            }
+        }
+    }
+
+    /**
+     * Converts the Pig files of a directory, translating the scripts of the same {@link ScriptShape} once: the first
+     * script of a shape is converted, then the SQL of the others is rendered from the template of the shape when it
+     * keeps every use of the literals differing between the scripts and its rendering for the first script matches its
+     * conversion (see {@link #convertPigFileToSQL(String, String, List)}).
+     * Scripts of different shapes are converted concurrently, the timeout applying to a whole shape. A
+     * {@link DuplicationReport} is written to the output directory.
+     *
+     * @param inputPath       Directory containing the Pig files.
+     * @param pigFiles        The Pig files to convert.
+     * @param outputDirectory Directory to store the converted SQL files.
+     * @param listener        Callback receiving the relative name of each processed file and the success of its conversion.
+     * @return A map, sorted by file name, containing the processed files and a boolean indicating the success of the conversion.
+     */
+    private Map<String, Boolean> convertDeduplicatedPigFiles(Path inputPath, List<Path> pigFiles, File outputDirectory,
+                                                             BiConsumer<String, Boolean> listener) {
+        Map<Path, ScriptShape> shapes = new HashMap<>();
+        Map<String, List<Path>> groups = new LinkedHashMap<>();
+        for (Path pigFile : pigFiles) {
+            // Scripts that cannot be templated are converted on their own
+            String groupKey = pigFile.toString();
+            try {
+                ScriptShape shape = ScriptShape.of(Files.readString(pigFile, StandardCharsets.UTF_8));
+                shapes.put(pigFile, shape);
+                if (!shape.referencesFiles()) {
+                    groupKey = shape.getFingerprint() + "\n" + ParameterTemplate.shapeOf(shapeParameters(pigFile, shape));
+                }
+            } catch (IOException e) {
+                logger.debug("Cannot read {}", pigFile, e);
+            }
+            groups.computeIfAbsent(groupKey, key -> new ArrayList<>()).add(pigFile);
+        }
+
+        Map<String, Boolean> conversionResults = new ConcurrentSkipListMap<>();
+        Map<Path, FileMetrics> metricsByFile = new HashMap<>();
+        pigFiles.forEach(pigFile -> metricsByFile.put(pigFile, new FileMetrics(inputPath.relativize(pigFile).toString())));
+        BiConsumer<Path, Throwable> complete = (pigFile, error) -> {
+            String relativeName = inputPath.relativize(pigFile).toString();
+            // A file is only reported once, a timed out shape completing the files it did not convert
+            if (conversionResults.putIfAbsent(relativeName, error == null) == null) {
+                if (error != null) {
+                    logger.debug("Conversion of {} failed", relativeName, error);
+                }
+                recordMetrics(metricsByFile.get(pigFile), error);
+                listener.accept(relativeName, error == null);
+            }
+        };
+
+        DuplicationReport report = new DuplicationReport();
+        DuplicateGroupContext context = new DuplicateGroupContext(inputPath, outputDirectory, shapes, metricsByFile,
+                report, complete);
+        List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        ExecutorService executor = createExecutor();
+        ScheduledExecutorService watchdog = createWatchdog();
+
+        try {
+            for (List<Path> group : groups.values()) {
+                CompletableFuture<Boolean> result = new CompletableFuture<>();
+                result.whenComplete((ignored, error) -> group.forEach(pigFile ->
+                        complete.accept(pigFile, error != null ? error : new IllegalStateException("Not converted"))));
+                pending.add(result);
+
+                executor.execute(() -> runWithTimeout(result, watchdog, () -> convertDuplicates(group, context)));
+            }
+
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                    .exceptionally(error -> null)
+                    .join();
+        } finally {
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+
+        try {
+            report.write(outputDirectory.toPath().resolve(DUPLICATION_REPORT));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing the duplication report.", e);
+        }
+        return conversionResults;
+    }
+
+    /**
+     * State shared by the conversions of the groups of duplicated scripts of a directory.
+     */
+    private static final class DuplicateGroupContext {
+
+        final Path inputPath;
+        final File outputDirectory;
+        final Map<Path, ScriptShape> shapes;
+        final Map<Path, FileMetrics> metricsByFile;
+        final DuplicationReport report;
+        final BiConsumer<Path, Throwable> complete;
+
+        DuplicateGroupContext(Path inputPath, File outputDirectory, Map<Path, ScriptShape> shapes,
+                              Map<Path, FileMetrics> metricsByFile, DuplicationReport report,
+                              BiConsumer<Path, Throwable> complete) {
+            this.inputPath = inputPath;
+            this.outputDirectory = outputDirectory;
+            this.shapes = shapes;
+            this.metricsByFile = metricsByFile;
+            this.report = report;
+            this.complete = complete;
+        }
+
+        String relativeName(Path pigFile) {
+            return inputPath.relativize(pigFile).toString();
+        }
+
+        String outputFile(Path pigFile) {
+            File outputFile = new File(outputDirectory, relativeName(pigFile).replaceAll("\\.pig$", ".sql"));
+            outputFile.getParentFile().mkdirs();
+            return outputFile.getAbsolutePath();
+        }
+
+        String shapeFingerprint(Path pigFile) {
+            ScriptShape shape = shapes.get(pigFile);
+            return shape == null ? null : shape.getFingerprint();
+        }
+    }
+
+    /**
+     * Converts a group of scripts with the same shape, the first one being translated and the others rendered
+     * from the template of the shape when possible.
+     *
+     * @param group   The scripts, all of them having the same shape unless the group has a single script.
+     * @param context The state of the directory conversion.
+     */
+    private void convertDuplicates(List<Path> group, DuplicateGroupContext context) {
+        Path first = group.get(0);
+        String firstFile = first.toAbsolutePath().toString();
+        FileMetrics firstMetrics = context.metricsByFile.get(first);
+
+        Map<String, String> firstSql;
+        String planFingerprint;
+        try {
+            List<RelNode> relNodes = convertPigFileToRel(firstFile, defaultParameters(firstFile), firstMetrics);
+            planFingerprint = Fingerprints.plan(relNodes);
+            firstSql = convertRelNodesToSQL(relNodes, getTargetDialects(), firstMetrics);
+            writeParameterSetSql(context.outputFile(first), firstSql, firstMetrics);
+        } catch (Exception e) {
+            context.complete.accept(first, e);
+            // Without a reference conversion, the other scripts cannot be rendered
+            convertDuplicatesOneByOne(group.subList(1, group.size()), context);
+            return;
+        }
+        context.report.add(context.relativeName(first), context.shapeFingerprint(first), planFingerprint, false);
+        context.complete.accept(first, null);
+        if (group.size() == 1) {
+            return;
+        }
+
+        ScriptShape shape = context.shapes.get(first);
+        Map<String, String> firstParams = shapeParameters(first, shape);
+        ParameterTemplate template = new ParameterTemplate(group.stream()
+                .map(pigFile -> shapeParameters(pigFile, context.shapes.get(pigFile)))
+                .collect(Collectors.toList()));
+        Map<String, String> templateSql = convertTemplate(shape, template, firstMetrics);
+        if (templateSql == null || !isSound(template, templateSql, ParameterTemplate.usesOf(shape.getTemplate()))
+                || !firstSql.equals(render(template, templateSql, firstParams))) {
+            logger.debug("Template mismatch, converting the scripts shaped as {} one by one", first);
+            convertDuplicatesOneByOne(group.subList(1, group.size()), context);
+            return;
+        }
+
+        for (Path pigFile : group.subList(1, group.size())) {
+            try {
+                Map<String, String> params = shapeParameters(pigFile, context.shapes.get(pigFile));
+                writeParameterSetSql(context.outputFile(pigFile), render(template, templateSql, params),
+                        context.metricsByFile.get(pigFile));
+                context.report.add(context.relativeName(pigFile), context.shapeFingerprint(pigFile), planFingerprint, true);
+                context.complete.accept(pigFile, null);
+            } catch (RuntimeException e) {
+                context.complete.accept(pigFile, e);
+            }
+        }
+    }
+
+    /**
+     * Converts scripts of a group on their own, each one being reported with the fingerprint of its own plan.
+     */
+    private void convertDuplicatesOneByOne(List<Path> pigFiles, DuplicateGroupContext context) {
+        for (Path pigFile : pigFiles) {
+            String file = pigFile.toAbsolutePath().toString();
+            FileMetrics fileMetrics = context.metricsByFile.get(pigFile);
+            try {
+                List<RelNode> relNodes = convertPigFileToRel(file, defaultParameters(file), fileMetrics);
+                writeParameterSetSql(context.outputFile(pigFile),
+                        convertRelNodesToSQL(relNodes, getTargetDialects(), fileMetrics), fileMetrics);
+                context.report.add(context.relativeName(pigFile), context.shapeFingerprint(pigFile),
+                        Fingerprints.plan(relNodes), false);
+                context.complete.accept(pigFile, null);
+            } catch (Exception e) {
+                context.complete.accept(pigFile, e);
+            }
+        }
+    }
+
+    /**
+     * Converts the template of a script shape with the sentinel values of a parameter template.
+     *
+     * @return The SQL template, by dialect name, or null if the template cannot be converted.
+     */
+    private Map<String, String> convertTemplate(ScriptShape shape, ParameterTemplate template, FileMetrics fileMetrics) {
+        Path templateFile = null;
+        try {
+            templateFile = Files.createTempFile("pigtosql-template-", ".pig");
+            Files.writeString(templateFile, shape.getTemplate(), StandardCharsets.UTF_8);
+            List<RelNode> relNodes = convertPigFileToRel(templateFile.toString(), template.getSentinelParameters(), fileMetrics);
+            return convertRelNodesToSQL(relNodes, getTargetDialects(), fileMetrics);
+        } catch (Exception e) {
+            logger.debug("No template for the script shape {}", shape.getFingerprint(), e);
+            return null;
+        } finally {
+            if (templateFile != null) {
+                templateFile.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Parameters of a script as a parameter set of the template of its shape: the default parameters and the
+     * values of its literals.
+     */
+    private static Map<String, String> shapeParameters(Path pigFile, ScriptShape shape) {
+        Map<String, String> params = defaultParameters(pigFile.toAbsolutePath().toString());
+        params.putAll(shape.getLiterals());
+        return params;
+    }
+
+    /**
+     * Lists the Pig files of a directory, walking its subdirectories when the recursive mode is enabled.
+     *
+     * @param inputPath Directory to scan.
+     * @return The Pig files found, sorted by path.
+     */
+    private List<Path> listPigFiles(Path inputPath) {
+        try (Stream<Path> paths = recursive ? Files.walk(inputPath) : Files.list(inputPath)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".pig"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error listing Pig files in " + inputPath, e);
+        }
+    }
+
+    /**
+     * @return The executor translating the components of split scripts, {@code threads} threads which do not prevent
+     * the JVM from exiting.
+     */
+    private synchronized ExecutorService getComponentExecutor() {
+        if (componentExecutor == null) {
+            componentExecutor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+                Thread thread = new Thread(runnable, "pigtosql-component");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return componentExecutor;
+    }
+
+    /**
+     * Creates the executor running directory conversions. Virtual threads are looked up reflectively so that
+     * the tool still runs on JVMs without them, in which case a fixed pool of {@code threads} is used.
+     *
+     * @return The executor service to use for a directory conversion.
+     */
+    private ExecutorService createExecutor() {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Virtual threads are not supported by this JVM, using {} platform thread(s).", threads);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * @return A scheduler enforcing the conversion timeouts, whose thread does not prevent the JVM from exiting.
+     */
+    private static ScheduledExecutorService createWatchdog() {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pigtosql-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a conversion on the current thread and completes the given future with its outcome. When a timeout is
+     * configured, the future is failed once it expires and the worker thread is interrupted. Pig and Calcite do not
+     * check for interruptions, so the conversion keeps its thread until it ends on its own: the timeout only reports
+     * it as failed, and discards the output files it has not written yet (see {@link #moveIntoPlace(Map)}).
+     *
+     * @param result     The future to complete.
+     * @param watchdog   Scheduler used to enforce the timeout.
+     * @param conversion The conversion to run.
+     */
+    private void runWithTimeout(CompletableFuture<Boolean> result, ScheduledExecutorService watchdog, Runnable conversion) {
+        Thread worker = Thread.currentThread();
+        ScheduledFuture<?> timeout = null;
+        if (timeoutSeconds > 0) {
+            timeout = watchdog.schedule(() -> {
+                synchronized (result) {
+                    if (result.completeExceptionally(new TimeoutException("Conversion exceeded " + timeoutSeconds + "s"))) {
+                        worker.interrupt();
+                    }
+                }
+            }, timeoutSeconds, TimeUnit.SECONDS);
+        }
+
+        runningConversion.set(result);
+        try {
+            conversion.run();
+            result.complete(true);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        } finally {
+            runningConversion.remove();
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            // Do not leak an interruption from the watchdog to the next conversion run by this thread: once the
+            // lock is held, the watchdog has either interrupted the thread or finds the future already completed
+            synchronized (result) {
+                Thread.interrupted();
+            }
+        }
     }
 }
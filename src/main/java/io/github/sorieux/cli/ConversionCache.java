@@ -0,0 +1,266 @@
+package io.github.sorieux.cli;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent, content-addressed cache of converted SQL.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of everything the conversion depends on: the script bytes, the resolved
+ * parameters, the imported macro files and the conversion settings (dialect, tool version...). Entries are stored
+ * as one file per key and evicted in least-recently-used order once the cache exceeds its maximum size.
+ */
+public class ConversionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionCache.class);
+
+    private static final String ENTRY_SUFFIX = ".sql";
+
+    // IMPORT 'path/to/file.macro';
+    private static final Pattern IMPORT_PATTERN = Pattern.compile("(?i)\\bIMPORT\\s+'([^']+)'\\s*;");
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // Entry sizes in access order, the first entry being the least recently used
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * Opens the cache stored in the given directory, creating it if needed.
+     *
+     * @param directory Directory holding the cache entries.
+     * @param maxBytes  Maximum total size of the entries, in bytes.
+     */
+    public ConversionCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                List<Path> existing = files
+                        .filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                        .sorted(Comparator.comparing(ConversionCache::lastModified))
+                        .collect(Collectors.toList());
+                for (Path file : existing) {
+                    String name = file.getFileName().toString();
+                    long size = Files.size(file);
+                    entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+                    totalBytes += size;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening the conversion cache in " + directory, e);
+        }
+    }
+
+    /**
+     * Computes the cache key of a Pig script conversion.
+     *
+     * @param script   Path to the Pig script.
+     * @param params   Parameters substituted in the script.
+     * @param settings Description of every other setting affecting the generated SQL.
+     * @return The hexadecimal key of the conversion.
+     * @throws IOException If the script or one of its imports cannot be read.
+     */
+    public String key(Path script, Map<String, String> params, String settings) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, "settings", settings.getBytes(StandardCharsets.UTF_8));
+
+        for (Map.Entry<String, String> param : new TreeMap<>(params).entrySet()) {
+            update(digest, "param", (param.getKey() + "=" + param.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        update(digest, "script", Files.readAllBytes(script));
+        for (Path imported : findImports(script)) {
+            update(digest, "import:" + imported, Files.readAllBytes(imported));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the digest of a settings file, such as a catalog, included in the conversion settings.
+     *
+     * @param content The content of the file.
+     * @return The hexadecimal SHA-256 hash of the content.
+     */
+    public static String digest(String content) {
+        return toHex(newDigest().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Looks up a cached conversion, marking it as recently used.
+     *
+     * @param key The key of the conversion.
+     * @return The cached SQL, if any.
+     */
+    public synchronized Optional<String> get(String key) {
+        // get() rather than containsKey() so that the entry moves to the most recently used position
+        if (entries.get(key) == null) {
+            return Optional.empty();
+        }
+
+        Path entry = entryPath(key);
+        try {
+            String sql = Files.readString(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(sql);
+        } catch (IOException e) {
+            // Entry removed or unreadable, treat it as a miss
+            logger.debug("Discarding unreadable cache entry {}", entry, e);
+            totalBytes -= entries.remove(key);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a conversion, evicting the least recently used entries if the cache becomes too large.
+     *
+     * @param key The key of the conversion.
+     * @param sql The converted SQL.
+     */
+    public synchronized void put(String key, String sql) {
+        Path entry = entryPath(key);
+        try {
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.writeString(temporary, sql);
+            try {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            long size = Files.size(entry);
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+        } catch (IOException e) {
+            // A cache failure must not fail the conversion
+            logger.warn("Unable to store cache entry {}", entry, e);
+            return;
+        }
+
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            try {
+                Files.deleteIfExists(entryPath(eldest.getKey()));
+            } catch (IOException e) {
+                logger.warn("Unable to evict cache entry {}", eldest.getKey(), e);
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Finds the macro files imported by a Pig script, following nested imports. Relative imports are resolved
+     * against the directory of the importing script, then against the working directory.
+     *
+     * @param script Path to the Pig script.
+     * @return The imported files, in discovery order.
+     * @throws IOException If a script cannot be read.
+     */
+    static List<Path> findImports(Path script) throws IOException {
+        List<Path> imports = new ArrayList<>();
+        Set<Path> visited = new HashSet<>();
+        List<Path> toVisit = new ArrayList<>(List.of(script.toAbsolutePath().normalize()));
+
+        while (!toVisit.isEmpty()) {
+            Path current = toVisit.remove(0);
+            if (!visited.add(current)) {
+                continue;
+            }
+
+            Matcher matcher = IMPORT_PATTERN.matcher(Files.readString(current));
+            while (matcher.find()) {
+                Path imported = resolveImport(current, matcher.group(1));
+                if (imported != null && !visited.contains(imported)) {
+                    imports.add(imported);
+                    toVisit.add(imported);
+                }
+            }
+        }
+        return imports;
+    }
+
+    private static Path resolveImport(Path importingScript, String importPath) {
+        Path path = Path.of(importPath);
+        Path parent = importingScript.getParent();
+        List<Path> candidates = path.isAbsolute() || parent == null
+                ? List.of(path)
+                : List.of(parent.resolve(path), path);
+
+        for (Path candidate : candidates) {
+            if (Files.isRegularFile(candidate)) {
+                return candidate.toAbsolutePath().normalize();
+            }
+        }
+        logger.debug("Import {} of {} not found, ignoring it for the cache key", importPath, importingScript);
+        return null;
+    }
+
+    private static void update(MessageDigest digest, String label, byte[] content) {
+        // Length-prefix each part so that different splits of the same bytes produce different keys
+        digest.update((label + ":" + content.length + ":").getBytes(StandardCharsets.UTF_8));
+        digest.update(content);
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Collects per-file timings and statistics of conversions and writes them as a JSON or CSV report.
+ * <p>
+ * Stages are recorded in the order of the pipeline: {@link #PIG_TO_REL} (Pig parsing and RelNode building, done by a
+ * single PigConverter call), {@link #OPTIMIZE} (plan rewriting, if enabled), {@link #REL_TO_SQL} (RelToSqlConverter),
+ * {@link #FORMAT} (SqlPrettyWriter) and {@link #WRITE} (output file). Metrics of concurrent conversions may be added from any thread.
+ */
+public class ConversionMetrics {
+
+    public static final String CACHE = "cache";
+    public static final String PIG_TO_REL = "pigToRel";
+    public static final String OPTIMIZE = "optimize";
+    public static final String REL_TO_SQL = "relToSql";
+    public static final String FORMAT = "format";
+    public static final String WRITE = "write";
+
+    private static final List<String> STAGES = List.of(CACHE, PIG_TO_REL, OPTIMIZE, REL_TO_SQL, FORMAT, WRITE);
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private final Queue<FileMetrics> files = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Metrics of the conversion of a single file, filled by the thread converting it.
+     */
+    public static class FileMetrics {
+
+        private final String file;
+        private final long startNanos = System.nanoTime();
+        private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        private int relNodeCount;
+        private long outputBytes;
+        private boolean cached;
+        private long totalNanos;
+        private String failure;
+
+        public FileMetrics(String file) {
+            this.file = file;
+        }
+
+        /**
+         * Adds the time elapsed since {@code startNanos} to a stage. Stages run several times, once per RelNode
+         * for instance, are accumulated.
+         *
+         * @param stage      Name of the stage.
+         * @param startNanos Start of the stage, as returned by {@link System#nanoTime()}.
+         */
+        public synchronized void record(String stage, long startNanos) {
+            stageNanos.merge(stage, System.nanoTime() - startNanos, Long::sum);
+        }
+
+        public synchronized void setRelNodeCount(int relNodeCount) {
+            this.relNodeCount = relNodeCount;
+        }
+
+        public synchronized void addOutputBytes(long outputBytes) {
+            this.outputBytes += outputBytes;
+        }
+
+        public synchronized void setCached(boolean cached) {
+            this.cached = cached;
+        }
+
+        /**
+         * Ends the measure of the conversion.
+         *
+         * @param error The failure of the conversion, null if it succeeded.
+         */
+        public synchronized void finish(Throwable error) {
+            totalNanos = System.nanoTime() - startNanos;
+            if (error != null) {
+                Throwable cause = error;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                failure = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+            }
+        }
+
+        synchronized double stageMillis(String stage) {
+            return stageNanos.getOrDefault(stage, 0L) / 1e6;
+        }
+
+        synchronized double totalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("file", file);
+            map.put("success", failure == null);
+            map.put("cached", cached);
+            map.put("totalMs", totalMillis());
+            Map<String, Object> stages = new LinkedHashMap<>();
+            for (String stage : STAGES) {
+                stages.put(stage, stageMillis(stage));
+            }
+            map.put("stagesMs", stages);
+            map.put("relNodes", relNodeCount);
+            map.put("outputBytes", outputBytes);
+            map.put("failure", failure);
+            return map;
+        }
+    }
+
+    /**
+     * Adds the metrics of a finished conversion.
+     *
+     * @param fileMetrics The metrics to add.
+     */
+    public void add(FileMetrics fileMetrics) {
+        files.add(fileMetrics);
+    }
+
+    /**
+     * Computes the percentiles of the total and stage times over all the files.
+     *
+     * @return For each measure, its percentiles in milliseconds, keyed by {@code p50}, {@code p90}, {@code p99}
+     * and {@code max}.
+     */
+    public Map<String, Map<String, Double>> summary() {
+        List<FileMetrics> snapshot = new ArrayList<>(files);
+        Map<String, Map<String, Double>> summary = new LinkedHashMap<>();
+        summary.put("total", percentiles(snapshot.stream().map(FileMetrics::totalMillis).collect(Collectors.toList())));
+        for (String stage : STAGES) {
+            summary.put(stage, percentiles(snapshot.stream().map(file -> file.stageMillis(stage)).collect(Collectors.toList())));
+        }
+        return summary;
+    }
+
+    /**
+     * Prints the percentile summary, followed by the slowest files.
+     *
+     * @param out     The stream to print to.
+     * @param slowest Number of slowest files to list.
+     */
+    public void printSummary(PrintStream out, int slowest) {
+        List<FileMetrics> snapshot = new ArrayList<>(files);
+        out.printf("Conversion times over %d file(s), in ms:%n", snapshot.size());
+        summary().forEach((measure, percentiles) -> out.printf("  %-9s p50=%.1f p90=%.1f p99=%.1f max=%.1f%n", measure,
+                percentiles.get("p50"), percentiles.get("p90"), percentiles.get("p99"), percentiles.get("max")));
+
+        snapshot.stream()
+                .sorted(Comparator.comparingDouble(FileMetrics::totalMillis).reversed())
+                .limit(slowest)
+                .forEach(file -> out.printf("  slowest: %s (%.1f ms)%n", file.file, file.totalMillis()));
+    }
+
+    /**
+     * Writes the report, as CSV if the file name ends with {@code .csv}, as JSON otherwise. The JSON report also
+     * contains the percentile summary.
+     *
+     * @param report Path of the report.
+     * @throws IOException If the report cannot be written.
+     */
+    public void write(Path report) throws IOException {
+        List<Map<String, Object>> rows = files.stream()
+                .map(FileMetrics::toMap)
+                .sorted(Comparator.comparing(row -> (String) row.get("file")))
+                .collect(Collectors.toList());
+
+        if (report.getFileName().toString().endsWith(".csv")) {
+            writeCsv(report, rows);
+        } else {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("summaryMs", summary());
+            json.put("files", rows);
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+        }
+    }
+
+    private static void writeCsv(Path report, List<Map<String, Object>> rows) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(report)) {
+            writer.write("file,success,cached,totalMs," +
+                    STAGES.stream().map(stage -> stage + "Ms").collect(Collectors.joining(",")) +
+                    ",relNodes,outputBytes,failure");
+            writer.newLine();
+
+            for (Map<String, Object> row : rows) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> stages = (Map<String, Object>) row.get("stagesMs");
+                List<Object> values = new ArrayList<>(List.of(row.get("file"), row.get("success"), row.get("cached"), row.get("totalMs")));
+                values.addAll(stages.values());
+                values.add(row.get("relNodes"));
+                values.add(row.get("outputBytes"));
+                values.add(row.get("failure") == null ? "" : row.get("failure"));
+
+                writer.write(values.stream().map(value -> csvEscape(String.valueOf(value))).collect(Collectors.joining(",")));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static String csvEscape(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static Map<String, Double> percentiles(List<Double> values) {
+        List<Double> sorted = values.stream().sorted().collect(Collectors.toList());
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (double percentile : PERCENTILES) {
+            String name = percentile == 100 ? "max" : "p" + (int) percentile;
+            if (sorted.isEmpty()) {
+                percentiles.put(name, 0.0);
+            } else {
+                // Nearest-rank percentile
+                int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+                percentiles.put(name, sorted.get(Math.max(0, rank - 1)));
+            }
+        }
+        return percentiles;
+    }
+}
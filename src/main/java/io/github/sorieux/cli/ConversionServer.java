@@ -0,0 +1,211 @@
+package io.github.sorieux.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived HTTP endpoint converting Pig scripts to SQL.
+ * <p>
+ * Keeping one JVM alive amortizes the start-up and JIT warm-up of the Calcite and Pig stacks across conversions.
+ * The server only listens on the given host (loopback by default) and exposes:
+ * <ul>
+ *     <li>{@code POST /convert} - the request body is a Pig script, the response body is the SQL.</li>
+ *     <li>{@code POST /convert-file?input=<path>} - converts a Pig file, the response body is the SQL.</li>
+ *     <li>{@code GET /health} - returns {@code OK} once the server is ready.</li>
+ * </ul>
+ * Every request must carry the token of the server in an {@code Authorization: Bearer <token>} header, otherwise it
+ * is rejected with 401. Web pages cannot send this header to another origin without a CORS preflight, which the
+ * server does not answer, so they cannot use a server running on the machine of their visitor. The server never
+ * writes files.
+ */
+public class ConversionServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionServer.class);
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    // Small script used to load and warm up the conversion path before accepting requests
+    private static final String WARM_UP_SCRIPT = "data = LOAD 'input.txt' USING PigStorage(',') AS (id:int, name:chararray);\n" +
+            "filtered = FILTER data BY id > 0;\n" +
+            "STORE filtered INTO 'output.txt';\n";
+
+    private final Commands commands;
+    private final byte[] token;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Creates a server bound to the given address. The server does not accept requests until {@link #start()}.
+     *
+     * @param commands The command instance performing the conversions.
+     * @param host     Host name or address to listen on.
+     * @param port     Port to listen on, 0 to pick a free one.
+     * @param threads  Number of requests handled concurrently.
+     * @param token    Token the requests must carry, see {@link #generateToken()}.
+     * @throws IOException If the server cannot be bound.
+     */
+    public ConversionServer(Commands commands, String host, int port, int threads, String token) throws IOException {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("The server token must not be empty.");
+        }
+        this.commands = commands;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+        server.setExecutor(executor);
+        server.createContext("/convert", authorized(this::handleConvert));
+        server.createContext("/convert-file", authorized(this::handleConvertFile));
+        server.createContext("/health", authorized(exchange -> send(exchange, 200, "OK")));
+    }
+
+    /**
+     * @return A random token, to use when none is configured.
+     */
+    public static String generateToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Warms up the conversion path and starts accepting requests.
+     */
+    public void start() {
+        long start = System.nanoTime();
+        try {
+            commands.convertPigStringToSQL(WARM_UP_SCRIPT);
+        } catch (RuntimeException e) {
+            logger.warn("Warm-up conversion failed", e);
+        }
+        logger.info("Conversion stack warmed up in {} ms", (System.nanoTime() - start) / 1_000_000);
+
+        server.start();
+        logger.info("Listening on http://{}:{}", server.getAddress().getHostString(), getPort());
+    }
+
+    /**
+     * Stops the server, letting in-flight requests complete.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        stopped.countDown();
+    }
+
+    /**
+     * Blocks until {@link #stop()} is called.
+     *
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @return The port the server is bound to.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "Use POST with the Pig script as request body.");
+            return;
+        }
+
+        String pig = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        try {
+            send(exchange, 200, commands.convertPigStringToSQL(pig));
+        } catch (RuntimeException e) {
+            send(exchange, 400, describe(e));
+        }
+    }
+
+    private void handleConvertFile(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "Use POST with the 'input' query parameter.");
+            return;
+        }
+
+        String input = parseQuery(exchange.getRequestURI().getRawQuery()).get("input");
+        if (input == null) {
+            send(exchange, 400, "Missing 'input' query parameter.");
+            return;
+        }
+
+        try {
+            send(exchange, 200, commands.convertPigFileToSQL(input));
+        } catch (RuntimeException e) {
+            send(exchange, 400, describe(e));
+        }
+    }
+
+    /**
+     * Rejects the requests not carrying the token of the server.
+     */
+    private HttpHandler authorized(HttpHandler handler) {
+        return exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            boolean valid = authorization != null && authorization.startsWith(BEARER_PREFIX)
+                    && MessageDigest.isEqual(token,
+                    authorization.substring(BEARER_PREFIX.length()).getBytes(StandardCharsets.UTF_8));
+            if (valid) {
+                handler.handle(exchange);
+            } else {
+                send(exchange, 401, "Missing or invalid 'Authorization: Bearer <token>' header.");
+            }
+        };
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String describe(Throwable error) {
+        StringBuilder message = new StringBuilder(String.valueOf(error.getMessage()));
+        for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+            message.append("\nCaused by: ").append(cause.getMessage());
+        }
+        return message.toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+}
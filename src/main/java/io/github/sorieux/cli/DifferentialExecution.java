@@ -0,0 +1,660 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.avatica.util.ByteString;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.volcano.VolcanoPlanner;
+import org.apache.calcite.prepare.RelOptTableImpl;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.logical.LogicalAggregate;
+import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalIntersect;
+import org.apache.calcite.rel.logical.LogicalJoin;
+import org.apache.calcite.rel.logical.LogicalMinus;
+import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.logical.LogicalSort;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.logical.LogicalUnion;
+import org.apache.calcite.rel.logical.LogicalValues;
+import org.apache.calcite.rel.rel2sql.RelToSqlConverter;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
+import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.schema.impl.AbstractTable;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.pretty.SqlPrettyWriter;
+import org.apache.calcite.sql.type.SqlTypeFamily;
+import org.apache.calcite.tools.RelRunner;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Executes the queries of a script locally, on generated sample data, to check a conversion and compare the cost of
+ * its variants without deploying them to a cluster.
+ * <p>
+ * Each query is run through Calcite's in-process Enumerable engine in four variants: the RelNode produced by the Pig
+ * translation ({@link #REFERENCE}), the optimized RelNode, and the SQL each of them is unparsed to. The result of
+ * each variant is compared with the one of the reference, as a multiset of rows: row order is not compared, and
+ * queries limiting ties may legitimately differ. The execution time and the memory allocated by each variant are
+ * recorded over several runs, after a first run which also compiles the generated code.
+ * <p>
+ * The sample rows of a table are generated from its row type, with a fixed seed. Numbers are drawn from a small
+ * range so that joins and comparisons match, and strings from a vocabulary including the string literals of the
+ * plans, so that their filters select rows.
+ */
+public class DifferentialExecution {
+
+    public static final String REFERENCE = "rel";
+    public static final String OPTIMIZED = "rel-optimized";
+    public static final String SQL = "sql";
+    public static final String OPTIMIZED_SQL = "sql-optimized";
+
+    // Numbers compared with 10 significant digits, the variants may add floating-point values in another order
+    private static final MathContext PRECISION = new MathContext(10);
+    private static final int NUMBER_RANGE = 200;
+    private static final double NULL_RATE = 0.02;
+
+    private final SqlDialect dialect;
+    private final int sampleRows;
+    private final int runs;
+    private final Queue<Map<String, Object>> queries = new ConcurrentLinkedQueue<>();
+    private final Queue<Map<String, Object>> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a harness.
+     *
+     * @param dialect    The dialect the RelNodes are unparsed to; its SQL must be parsable by Calcite with back-tick
+     *                   quoting, as the ANSI dialect of the converter.
+     * @param sampleRows Number of rows generated per table.
+     * @param runs       Number of measured runs of each variant.
+     */
+    public DifferentialExecution(SqlDialect dialect, int sampleRows, int runs) {
+        if (sampleRows < 1 || runs < 1) {
+            throw new IllegalArgumentException("The number of sample rows and of runs must be positive.");
+        }
+        this.dialect = dialect;
+        this.sampleRows = sampleRows;
+        this.runs = runs;
+    }
+
+    /**
+     * Executes the queries of a script in all their variants.
+     *
+     * @param script            The name of the script.
+     * @param relNodes          The RelNodes of the script, one per STORE, as translated.
+     * @param optimizedRelNodes The same RelNodes, optimized.
+     * @throws SQLException             If the local engine cannot be started.
+     * @throws IllegalArgumentException If a table is scanned with different row types.
+     */
+    public void add(String script, List<RelNode> relNodes, List<RelNode> optimizedRelNodes) throws SQLException {
+        Properties info = new Properties();
+        // Back-tick quoting and case-sensitive identifiers, as in the ANSI SQL of the converter
+        info.setProperty("lex", "JAVA");
+        try (Connection connection = DriverManager.getConnection("jdbc:calcite:", info)) {
+            CalciteConnection calciteConnection = connection.unwrap(CalciteConnection.class);
+            List<RelNode> plans = new ArrayList<>(relNodes);
+            plans.addAll(optimizedRelNodes);
+            Map<List<String>, CalciteSchema.TableEntry> tables =
+                    createSampleTables(calciteConnection.getRootSchema(), plans, vocabulary(plans));
+
+            for (int i = 0; i < relNodes.size(); i++) {
+                Map<String, RelNode> plansByVariant = new LinkedHashMap<>();
+                plansByVariant.put(REFERENCE, relNodes.get(i));
+                plansByVariant.put(OPTIMIZED, optimizedRelNodes.get(i));
+
+                Map<String, Execution> executions = new LinkedHashMap<>();
+                plansByVariant.forEach((variant, rel) -> executions.put(variant,
+                        execute(() -> prepare(connection, bind(rel, tables)))));
+                plansByVariant.forEach((variant, rel) -> {
+                    String sqlVariant = variant.equals(REFERENCE) ? SQL : OPTIMIZED_SQL;
+                    String sql;
+                    try {
+                        sql = unparse(rel);
+                    } catch (RuntimeException e) {
+                        executions.put(sqlVariant, failed(e));
+                        return;
+                    }
+                    executions.put(sqlVariant, execute(() -> connection.prepareStatement(sql)));
+                });
+                queries.add(report(script, i + 1, executions));
+            }
+        }
+    }
+
+    /**
+     * Records a script that could not be translated.
+     *
+     * @param script The name of the script.
+     * @param error  The failure of the translation.
+     */
+    public void addFailure(String script, Throwable error) {
+        Map<String, Object> failure = new LinkedHashMap<>();
+        failure.put("script", script);
+        failure.put("failure", describe(error));
+        failures.add(failure);
+    }
+
+    /**
+     * @return The executed queries, by script and STORE.
+     */
+    public List<Map<String, Object>> getQueries() {
+        return queries.stream()
+                .sorted(Comparator.comparing((Map<String, Object> query) -> (String) query.get("script"))
+                        .thenComparingInt(query -> (Integer) query.get("store")))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Prints the number of consistent queries and the variants whose result differs from the reference.
+     *
+     * @param out The stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        List<Map<String, Object>> snapshot = getQueries();
+        long consistent = snapshot.stream().filter(query -> (Boolean) query.get("consistent")).count();
+        out.printf("Executed %d query(ies) on %d sample rows per table: %d consistent, %d inconsistent; "
+                + "%d script(s) failed to translate.%n", snapshot.size(), sampleRows, consistent,
+                snapshot.size() - consistent, failures.size());
+        for (Map<String, Object> query : snapshot) {
+            Map<?, ?> variants = (Map<?, ?>) query.get("variants");
+            variants.forEach((variant, execution) -> {
+                Map<?, ?> result = (Map<?, ?>) execution;
+                if (result.get("error") != null) {
+                    out.printf("  %s, STORE %s, %s: %s%n", query.get("script"), query.get("store"), variant, result.get("error"));
+                } else if (Boolean.FALSE.equals(result.get("matchesReference"))) {
+                    out.printf("  %s, STORE %s, %s: result differs from %s%n", query.get("script"), query.get("store"),
+                            variant, REFERENCE);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the executed queries and the failures as JSON.
+     *
+     * @param report Path of the report.
+     * @throws IOException If the report cannot be written.
+     */
+    public void write(Path report) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("sampleRows", sampleRows);
+        json.put("runs", runs);
+        json.put("queries", getQueries());
+        json.put("failures", failures.stream()
+                .sorted(Comparator.comparing(failure -> (String) failure.get("script")))
+                .collect(Collectors.toList()));
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+    }
+
+    /**
+     * Result and measurements of a variant.
+     */
+    private static final class Execution {
+
+        List<String> rows;
+        String error;
+        long firstNanos;
+        final List<Long> nanos = new ArrayList<>();
+        final List<Long> allocatedBytes = new ArrayList<>();
+    }
+
+    @FunctionalInterface
+    private interface StatementFactory {
+
+        PreparedStatement prepare() throws Exception;
+    }
+
+    /**
+     * Runs a variant once to get its result, then measures it.
+     */
+    private Execution execute(StatementFactory statements) {
+        Execution execution = new Execution();
+        try {
+            long start = System.nanoTime();
+            execution.rows = fetch(statements);
+            execution.firstNanos = System.nanoTime() - start;
+
+            for (int run = 0; run < runs; run++) {
+                long allocated = allocatedBytes();
+                start = System.nanoTime();
+                fetch(statements);
+                execution.nanos.add(System.nanoTime() - start);
+                if (allocated >= 0) {
+                    execution.allocatedBytes.add(allocatedBytes() - allocated);
+                }
+            }
+        } catch (Exception | LinkageError e) {
+            // Pig UDFs and types the engine does not support fail the variant, not the script
+            return failed(e);
+        }
+        return execution;
+    }
+
+    private static Execution failed(Throwable error) {
+        Execution execution = new Execution();
+        execution.error = describe(error);
+        return execution;
+    }
+
+    private static List<String> fetch(StatementFactory statements) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (PreparedStatement statement = statements.prepare();
+             ResultSet resultSet = statement.executeQuery()) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int column = 1; column <= columns; column++) {
+                    if (column > 1) {
+                        row.append('|');
+                    }
+                    row.append(normalize(resultSet.getObject(column)));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Prepares the execution of a RelNode bound to the sample tables, in a cluster of its own (see
+     * {@link #bind(RelNode, Map)}): preparing a RelNode registers it in the planner of its cluster, which would keep
+     * the state of the previous execution, and the planner of the translation is left untouched.
+     */
+    private static PreparedStatement prepare(Connection connection, RelNode rel) throws SQLException {
+        return connection.unwrap(RelRunner.class).prepareStatement(rel);
+    }
+
+    private String unparse(RelNode rel) {
+        return new SqlPrettyWriter(dialect).format(new RelToSqlConverter(dialect).visitRoot(rel).asStatement());
+    }
+
+    private Map<String, Object> report(String script, int store, Map<String, Execution> executions) {
+        List<String> reference = executions.get(REFERENCE).rows;
+        List<String> sortedReference = reference == null ? null : sorted(reference);
+
+        boolean consistent = reference != null;
+        Map<String, Object> variants = new LinkedHashMap<>();
+        for (Map.Entry<String, Execution> entry : executions.entrySet()) {
+            Execution execution = entry.getValue();
+            Map<String, Object> variant = new LinkedHashMap<>();
+            if (execution.error != null) {
+                variant.put("error", execution.error);
+                consistent = false;
+            } else {
+                variant.put("rows", execution.rows.size());
+                if (!entry.getKey().equals(REFERENCE)) {
+                    Boolean matches = sortedReference == null ? null : sortedReference.equals(sorted(execution.rows));
+                    variant.put("matchesReference", matches);
+                    consistent = consistent && Boolean.TRUE.equals(matches);
+                }
+                variant.put("firstRunMillis", execution.firstNanos / 1e6);
+                variant.put("medianMillis", median(execution.nanos) / 1e6);
+                variant.put("medianAllocatedBytes", execution.allocatedBytes.isEmpty() ? null : median(execution.allocatedBytes));
+            }
+            variants.put(entry.getKey(), variant);
+        }
+
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("script", script);
+        query.put("store", store);
+        query.put("consistent", consistent);
+        query.put("variants", variants);
+        return query;
+    }
+
+    /**
+     * Registers a sample table for each table scanned by the plans, under its qualified name.
+     *
+     * @return The registered tables, by qualified name.
+     * @throws IllegalArgumentException If a table is scanned with different row types, e.g. a file loaded with two
+     *                                  schemas, which the SQL variants could not tell apart.
+     */
+    private Map<List<String>, CalciteSchema.TableEntry> createSampleTables(SchemaPlus rootSchema, List<RelNode> plans,
+                                                                          List<String> vocabulary) {
+        Map<List<String>, CalciteSchema.TableEntry> tables = new LinkedHashMap<>();
+        for (RelNode plan : plans) {
+            plan.accept(new RelShuttleImpl() {
+                @Override
+                public RelNode visit(TableScan scan) {
+                    List<String> names = scan.getTable().getQualifiedName();
+                    CalciteSchema.TableEntry registered = tables.get(names);
+                    if (registered != null) {
+                        RelDataType registeredType = ((SampleTable) registered.getTable()).rowType;
+                        if (!registeredType.equals(scan.getRowType())) {
+                            throw new IllegalArgumentException("Table " + String.join(".", names)
+                                    + " is loaded with different schemas: " + registeredType.getFullTypeString()
+                                    + " and " + scan.getRowType().getFullTypeString());
+                        }
+                    } else {
+                        SchemaPlus schema = rootSchema;
+                        for (String name : names.subList(0, names.size() - 1)) {
+                            SchemaPlus subSchema = schema.getSubSchema(name);
+                            schema = subSchema != null ? subSchema : schema.add(name, new AbstractSchema());
+                        }
+                        String tableName = names.get(names.size() - 1);
+                        schema.add(tableName, new SampleTable(scan.getRowType(), generateRows(names, scan.getRowType(), vocabulary)));
+                        tables.put(names, CalciteSchema.from(schema).getTable(tableName, true));
+                    }
+                    return scan;
+                }
+            });
+        }
+        return tables;
+    }
+
+    /**
+     * Copies a plan into a cluster of its own, its scans reading the sample tables. The planner of the cluster has the
+     * trait definitions and rules of the planner of the plan, and shares its type factory, so that the plan is
+     * prepared as in the cluster of the translation without changing its planner.
+     */
+    private static RelNode bind(RelNode rel, Map<List<String>, CalciteSchema.TableEntry> tables) {
+        RelOptPlanner translationPlanner = rel.getCluster().getPlanner();
+        VolcanoPlanner planner = new VolcanoPlanner(translationPlanner.getCostFactory(), translationPlanner.getContext());
+        translationPlanner.getRelTraitDefs().forEach(planner::addRelTraitDef);
+        translationPlanner.getRules().forEach(planner::addRule);
+        planner.setExecutor(translationPlanner.getExecutor());
+        RelOptCluster cluster = RelOptCluster.create(planner, rel.getCluster().getRexBuilder());
+
+        RelNode bound = rel.accept(new ClusterCopier(cluster, tables));
+        if (bound.getCluster() != cluster) {
+            // The root is of a type the copier does not rebuild, the planner of its cluster is the one preparing it
+            bound = LogicalProject.create(bound, ImmutableList.of(),
+                    cluster.getRexBuilder().identityProjects(bound.getRowType()), bound.getRowType());
+        }
+        return bound;
+    }
+
+    /**
+     * Rebuilds the logical RelNodes of a plan in another cluster. The RelNodes of other types are copied with their
+     * rebuilt inputs and stay in their cluster.
+     */
+    private static final class ClusterCopier extends RelShuttleImpl {
+
+        private final RelOptCluster cluster;
+        private final Map<List<String>, CalciteSchema.TableEntry> tables;
+
+        ClusterCopier(RelOptCluster cluster, Map<List<String>, CalciteSchema.TableEntry> tables) {
+            this.cluster = cluster;
+            this.tables = tables;
+        }
+
+        @Override
+        public RelNode visit(TableScan scan) {
+            CalciteSchema.TableEntry table = tables.get(scan.getTable().getQualifiedName());
+            return LogicalTableScan.create(cluster, RelOptTableImpl.create(null, scan.getRowType(), table, null),
+                    ImmutableList.of());
+        }
+
+        @Override
+        public RelNode visit(LogicalValues values) {
+            return LogicalValues.create(cluster, values.getRowType(), values.getTuples());
+        }
+
+        @Override
+        public RelNode visit(LogicalFilter filter) {
+            return LogicalFilter.create(filter.getInput().accept(this), filter.getCondition(),
+                    ImmutableSet.copyOf(filter.getVariablesSet()));
+        }
+
+        @Override
+        public RelNode visit(LogicalProject project) {
+            return LogicalProject.create(project.getInput().accept(this), project.getHints(), project.getProjects(),
+                    project.getRowType());
+        }
+
+        @Override
+        public RelNode visit(LogicalAggregate aggregate) {
+            return LogicalAggregate.create(aggregate.getInput().accept(this), aggregate.getHints(),
+                    aggregate.getGroupSet(), aggregate.getGroupSets(), aggregate.getAggCallList());
+        }
+
+        @Override
+        public RelNode visit(LogicalJoin join) {
+            return LogicalJoin.create(join.getLeft().accept(this), join.getRight().accept(this), join.getHints(),
+                    join.getCondition(), join.getVariablesSet(), join.getJoinType());
+        }
+
+        @Override
+        public RelNode visit(LogicalSort sort) {
+            return LogicalSort.create(sort.getInput().accept(this), sort.getCollation(), sort.offset, sort.fetch);
+        }
+
+        @Override
+        public RelNode visit(LogicalUnion union) {
+            return LogicalUnion.create(acceptAll(union.getInputs()), union.all);
+        }
+
+        @Override
+        public RelNode visit(LogicalIntersect intersect) {
+            return LogicalIntersect.create(acceptAll(intersect.getInputs()), intersect.all);
+        }
+
+        @Override
+        public RelNode visit(LogicalMinus minus) {
+            return LogicalMinus.create(acceptAll(minus.getInputs()), minus.all);
+        }
+
+        private List<RelNode> acceptAll(List<RelNode> inputs) {
+            return inputs.stream().map(input -> input.accept(this)).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Generates the rows of a table, the same ones for a given table name and row type.
+     */
+    private List<Object[]> generateRows(List<String> names, RelDataType rowType, List<String> vocabulary) {
+        Random random = new Random(names.hashCode() * 31L + rowType.getFullTypeString().hashCode());
+        List<Object[]> rows = new ArrayList<>(sampleRows);
+        for (int i = 0; i < sampleRows; i++) {
+            Object[] row = new Object[rowType.getFieldCount()];
+            for (RelDataTypeField field : rowType.getFieldList()) {
+                boolean isNull = field.getType().isNullable() && random.nextDouble() < NULL_RATE;
+                row[field.getIndex()] = isNull ? null : generateValue(field.getType(), random, vocabulary);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Generates a value of the Java class the Enumerable engine uses for a type, or null for the types it cannot
+     * scan from sample data, such as bags, tuples and maps.
+     */
+    private static Object generateValue(RelDataType type, Random random, List<String> vocabulary) {
+        switch (type.getSqlTypeName()) {
+            case TINYINT:
+                return (byte) random.nextInt(100);
+            case SMALLINT:
+                return (short) random.nextInt(NUMBER_RANGE);
+            case INTEGER:
+                return random.nextInt(NUMBER_RANGE);
+            case BIGINT:
+                return (long) random.nextInt(NUMBER_RANGE);
+            case REAL:
+                return random.nextInt(NUMBER_RANGE * 100) / 100f;
+            case FLOAT:
+            case DOUBLE:
+                return random.nextInt(NUMBER_RANGE * 100) / 100d;
+            case DECIMAL:
+                return BigDecimal.valueOf(random.nextInt(NUMBER_RANGE * 100), 2);
+            case BOOLEAN:
+                return random.nextBoolean();
+            case CHAR:
+            case VARCHAR:
+                return vocabulary.get(random.nextInt(vocabulary.size()));
+            case BINARY:
+            case VARBINARY:
+                return new ByteString(vocabulary.get(random.nextInt(vocabulary.size())).getBytes(StandardCharsets.UTF_8));
+            case DATE:
+                // Days since the epoch, in 2024
+                return 19723 + random.nextInt(366);
+            case TIMESTAMP:
+                return (19723 + random.nextInt(366)) * 86_400_000L + random.nextInt(86_400) * 1000L;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Collects the string literals of the plans, followed by a few generic values.
+     */
+    private static List<String> vocabulary(List<RelNode> plans) {
+        Set<String> vocabulary = new LinkedHashSet<>();
+        RexShuttle literals = new RexShuttle() {
+            @Override
+            public RexNode visitLiteral(RexLiteral literal) {
+                if (literal.getType().getSqlTypeName().getFamily() == SqlTypeFamily.CHARACTER) {
+                    String value = literal.getValueAs(String.class);
+                    if (value != null) {
+                        vocabulary.add(value);
+                    }
+                }
+                return literal;
+            }
+        };
+        plans.forEach(plan -> collectLiterals(plan, literals));
+        for (int i = 0; i < 10; i++) {
+            vocabulary.add("v" + i);
+        }
+        return new ArrayList<>(vocabulary);
+    }
+
+    private static void collectLiterals(RelNode rel, RexShuttle literals) {
+        rel.accept(literals);
+        rel.getInputs().forEach(input -> collectLiterals(input, literals));
+    }
+
+    private static String normalize(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            return Double.isFinite(number) ? normalize(BigDecimal.valueOf(number)) : Double.toString(number);
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).round(PRECISION).stripTrailingZeros().toPlainString();
+        } else if (value instanceof Number) {
+            return normalize(new BigDecimal(value.toString()));
+        } else if (value instanceof Array) {
+            try {
+                Object[] elements = (Object[]) ((Array) value).getArray();
+                return Arrays.stream(elements).map(DifferentialExecution::normalize)
+                        .collect(Collectors.joining(",", "[", "]"));
+            } catch (SQLException e) {
+                return value.toString();
+            }
+        } else if (value instanceof Object[]) {
+            return Arrays.stream((Object[]) value).map(DifferentialExecution::normalize)
+                    .collect(Collectors.joining(",", "[", "]"));
+        }
+        return value.toString();
+    }
+
+    private static List<String> sorted(List<String> rows) {
+        List<String> sorted = new ArrayList<>(rows);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * @return The bytes allocated so far by the current thread, or -1 if the JVM does not measure them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+    }
+
+    /**
+     * Table of generated rows, scanned by the Enumerable engine.
+     */
+    private static final class SampleTable extends AbstractTable implements ScannableTable {
+
+        private final RelDataType rowType;
+        private final List<Object[]> rows;
+
+        SampleTable(RelDataType rowType, List<Object[]> rows) {
+            this.rowType = rowType;
+            this.rows = rows;
+        }
+
+        @Override
+        public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+            return typeFactory.copyType(rowType);
+        }
+
+        @Override
+        public Statistic getStatistic() {
+            return Statistics.of(rows.size(), ImmutableList.of());
+        }
+
+        @Override
+        public Enumerable<Object[]> scan(DataContext root) {
+            return Linq4j.asEnumerable(rows);
+        }
+    }
+}
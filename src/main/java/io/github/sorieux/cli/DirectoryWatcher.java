@@ -0,0 +1,261 @@
+package io.github.sorieux.cli;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watches a directory of Pig scripts and the macro files they import, reporting the scripts to re-convert when
+ * files change.
+ * <p>
+ * The watcher keeps a dependency graph from each script to the files it imports, nested imports included (see
+ * {@link ConversionCache#findImports(Path)}): a changed script is reported with the scripts importing it, a changed
+ * macro with the scripts importing it. Changes are debounced: the events received until no other event arrives for
+ * the debounce delay are reported at once, editors writing a file in several events. Directories containing imported
+ * files outside the watched directory are watched too.
+ * <p>
+ * The watcher is not thread-safe: it is run by a single thread, and closed from any thread to stop it.
+ */
+public class DirectoryWatcher implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    private final Path directory;
+    private final boolean recursive;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    // Files imported by each script, and the scripts importing each file
+    private final Map<Path, List<Path>> importsByScript = new HashMap<>();
+    private final Map<Path, Set<Path>> scriptsByImport = new HashMap<>();
+
+    /**
+     * Starts watching a directory.
+     *
+     * @param directory      The directory of the Pig scripts.
+     * @param scripts        The Pig scripts of the directory.
+     * @param recursive      Whether the scripts of the subdirectories are watched too.
+     * @param debounceMillis Time without events after which the changes are reported, in milliseconds.
+     * @throws IOException If the directory cannot be watched.
+     */
+    public DirectoryWatcher(Path directory, List<Path> scripts, boolean recursive, long debounceMillis) throws IOException {
+        this.directory = normalize(directory);
+        this.recursive = recursive;
+        this.debounceMillis = debounceMillis;
+        this.watchService = this.directory.getFileSystem().newWatchService();
+
+        registerTree(this.directory);
+        for (Path script : scripts) {
+            updateDependencies(normalize(script));
+        }
+    }
+
+    /**
+     * Watches the files until the watcher is closed, passing each batch of affected scripts to the consumer from
+     * the calling thread.
+     *
+     * @param onChange Receives the existing scripts to re-convert, sorted by path.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public void run(Consumer<Set<Path>> onChange) throws InterruptedException {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watchService.take(), changed);
+                WatchKey next;
+                while ((next = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    collect(next, changed);
+                }
+
+                Set<Path> affected = affectedScripts(changed);
+                if (!affected.isEmpty()) {
+                    onChange.accept(affected);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("Stopped watching {}", directory);
+        }
+    }
+
+    /**
+     * Stops watching.
+     *
+     * @throws IOException If the watch service cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Finds the scripts affected by changed files and updates their dependencies. Deleted scripts are removed from
+     * the dependency graph.
+     *
+     * @param changed The changed files.
+     * @return The existing affected scripts, sorted by path.
+     */
+    Set<Path> affectedScripts(Set<Path> changed) {
+        Set<Path> affected = new TreeSet<>();
+        for (Path path : changed) {
+            Path file = normalize(path);
+            if (isScript(file)) {
+                if (Files.isRegularFile(file)) {
+                    affected.add(file);
+                } else {
+                    removeDependencies(file);
+                }
+            }
+            affected.addAll(scriptsByImport.getOrDefault(file, Collections.emptySet()));
+        }
+
+        affected.removeIf(script -> !Files.isRegularFile(script));
+        affected.forEach(this::updateDependencies);
+        return affected;
+    }
+
+    /**
+     * @param script A Pig script of the directory.
+     * @return The files the script imports, as of its last change.
+     */
+    List<Path> getImports(Path script) {
+        return importsByScript.getOrDefault(normalize(script), Collections.emptyList());
+    }
+
+    /**
+     * Adds the events of a watch key to the changed files, registering the new subdirectories in recursive mode.
+     */
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path watched = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, every known file may have changed
+                logger.warn("Too many changes in {}, re-converting all the scripts", watched);
+                changed.addAll(importsByScript.keySet());
+                changed.addAll(scriptsByImport.keySet());
+                continue;
+            }
+            if (watched == null) {
+                continue;
+            }
+
+            Path child = watched.resolve((Path) event.context());
+            changed.add(child);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && recursive
+                    && child.startsWith(directory) && Files.isDirectory(child)) {
+                // Scripts may be created in the new directory before it is registered
+                try {
+                    registerTree(child);
+                    changed.addAll(listScripts(child));
+                } catch (UncheckedIOException e) {
+                    // The directory may already be deleted, its deletion is reported by its parent
+                    logger.warn("Cannot watch {}", child, e);
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void updateDependencies(Path script) {
+        removeDependencies(script);
+        List<Path> imports;
+        try {
+            imports = ConversionCache.findImports(script).stream()
+                    .map(DirectoryWatcher::normalize)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.debug("Cannot read the imports of {}", script, e);
+            imports = Collections.emptyList();
+        }
+
+        importsByScript.put(script, imports);
+        for (Path imported : imports) {
+            scriptsByImport.computeIfAbsent(imported, file -> new HashSet<>()).add(script);
+            Path parent = imported.getParent();
+            if (parent != null && !watchedDirectories.containsValue(parent)) {
+                register(parent);
+            }
+        }
+    }
+
+    private void removeDependencies(Path script) {
+        List<Path> imports = importsByScript.remove(script);
+        if (imports == null) {
+            return;
+        }
+        for (Path imported : imports) {
+            Set<Path> scripts = scriptsByImport.get(imported);
+            if (scripts != null) {
+                scripts.remove(script);
+                if (scripts.isEmpty()) {
+                    scriptsByImport.remove(imported);
+                }
+            }
+        }
+    }
+
+    private boolean isScript(Path file) {
+        return file.getFileName() != null
+                && file.getFileName().toString().endsWith(".pig")
+                && (recursive ? file.startsWith(directory) : directory.equals(file.getParent()));
+    }
+
+    private void registerTree(Path root) {
+        if (!recursive) {
+            register(root);
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isDirectory).forEach(this::register);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error watching " + root, e);
+        }
+    }
+
+    private void register(Path watched) {
+        try {
+            WatchKey key = watched.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(key, watched);
+        } catch (IOException e) {
+            logger.warn("Cannot watch {}", watched, e);
+        }
+    }
+
+    private List<Path> listScripts(Path root) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).filter(this::isScript).collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.debug("Cannot list {}", root, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Report of the duplicated scripts of a directory, grouping the scripts by plan fingerprint so that workloads
+ * running the same plan over other tables or constants can be consolidated.
+ * <p>
+ * Scripts may be added from any thread.
+ */
+public class DuplicationReport {
+
+    private final Queue<Map<String, Object>> scripts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Adds a converted script.
+     *
+     * @param file            The name of the script.
+     * @param scriptShape     The fingerprint of its {@link ScriptShape}.
+     * @param planFingerprint The fingerprint of its plan, null if unknown.
+     * @param rendered        Whether its SQL was rendered from the template of its shape rather than translated.
+     */
+    public void add(String file, String scriptShape, String planFingerprint, boolean rendered) {
+        Map<String, Object> script = new LinkedHashMap<>();
+        script.put("file", file);
+        script.put("scriptShape", scriptShape);
+        script.put("planFingerprint", planFingerprint);
+        script.put("rendered", rendered);
+        scripts.add(script);
+    }
+
+    /**
+     * Writes the report as JSON: totals, then the plan groups, largest first.
+     *
+     * @param report Path of the report.
+     * @throws IOException If the report cannot be written.
+     */
+    public void write(Path report) throws IOException {
+        List<Map<String, Object>> snapshot = scripts.stream()
+                .sorted(Comparator.comparing(script -> (String) script.get("file")))
+                .collect(Collectors.toList());
+
+        // Scripts without plan fingerprint are reported on their own
+        Map<String, List<Map<String, Object>>> plans = new TreeMap<>();
+        for (Map<String, Object> script : snapshot) {
+            Object planFingerprint = script.get("planFingerprint");
+            String key = planFingerprint != null ? (String) planFingerprint : "unknown:" + script.get("file");
+            plans.computeIfAbsent(key, fingerprint -> new ArrayList<>()).add(script);
+        }
+
+        List<Map<String, Object>> groups = plans.values().stream()
+                .sorted(Comparator.comparingInt((List<Map<String, Object>> group) -> group.size()).reversed())
+                .map(group -> {
+                    Map<String, Object> json = new LinkedHashMap<>();
+                    json.put("planFingerprint", group.get(0).get("planFingerprint"));
+                    json.put("scripts", group.size());
+                    json.put("scriptShapes", group.stream().map(script -> script.get("scriptShape")).distinct().count());
+                    json.put("files", group.stream().map(script -> script.get("file")).collect(Collectors.toList()));
+                    return json;
+                })
+                .collect(Collectors.toList());
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("scripts", snapshot.size());
+        json.put("scriptShapes", snapshot.stream().map(script -> script.get("scriptShape")).distinct().count());
+        json.put("planShapes", groups.size());
+        json.put("rendered", snapshot.stream().filter(script -> (Boolean) script.get("rendered")).count());
+        json.put("groups", groups);
+        json.put("files", snapshot);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+    }
+}
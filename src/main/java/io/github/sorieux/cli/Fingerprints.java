@@ -0,0 +1,82 @@
+package io.github.sorieux.cli;
+
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexShuttle;
+import org.apache.calcite.sql.SqlExplainLevel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Short fingerprints identifying scripts and plans that only differ by their literals and paths.
+ */
+public final class Fingerprints {
+
+    private static final int LENGTH = 16;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * @param content The content to fingerprint.
+     * @return The first hexadecimal digits of the SHA-256 hash of the content.
+     */
+    public static String of(String content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (byte b : digest.digest(content.getBytes(StandardCharsets.UTF_8))) {
+            fingerprint.append(String.format("%02x", b));
+        }
+        return fingerprint.substring(0, LENGTH);
+    }
+
+    /**
+     * Fingerprints the plan of a script: the digests of its RelNodes, with literals replaced by parameters and
+     * tables by a single anonymous table, so that plans applying the same operators to other tables or constants
+     * have the same fingerprint.
+     *
+     * @param relNodes The RelNodes of the script.
+     * @return The plan fingerprint.
+     */
+    public static String plan(List<RelNode> relNodes) {
+        StringBuilder digests = new StringBuilder();
+        for (RelNode rel : relNodes) {
+            digests.append(RelOptUtil.toString(abstractPlan(rel), SqlExplainLevel.DIGEST_ATTRIBUTES)).append('\n');
+        }
+        return of(digests.toString());
+    }
+
+    private static RelNode abstractPlan(RelNode rel) {
+        RexShuttle literals = new RexShuttle() {
+            @Override
+            public RexNode visitLiteral(RexLiteral literal) {
+                return rel.getCluster().getRexBuilder().makeDynamicParam(literal.getType(), 0);
+            }
+        };
+
+        return rel.accept(new RelShuttleImpl() {
+            @Override
+            public RelNode visit(TableScan scan) {
+                return RelTables.scan(scan.getCluster(), List.of("table"), scan.getRowType());
+            }
+
+            @Override
+            protected RelNode visitChildren(RelNode node) {
+                return super.visitChildren(node).accept(literals);
+            }
+        });
+    }
+}
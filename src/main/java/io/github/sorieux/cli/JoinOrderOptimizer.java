@@ -0,0 +1,70 @@
+package io.github.sorieux.cli;
+
+import org.apache.calcite.plan.hep.HepMatchOrder;
+import org.apache.calcite.plan.hep.HepProgram;
+import org.apache.calcite.plan.hep.HepProgramBuilder;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.rules.CoreRules;
+import org.apache.calcite.tools.Program;
+import org.apache.calcite.tools.Programs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+
+/**
+ * Reorders the inner joins of the RelNodes produced by the Pig translation using the statistics of a
+ * {@link TableCatalog}, instead of keeping the order written in the script.
+ * <p>
+ * Filters are first pushed into the joins, then each tree of inner joins is flattened into a multi-join and
+ * reordered by {@code LoptOptimizeJoinRule}: starting from the largest input, it greedily adds the input yielding the
+ * smallest estimated intermediate result, and puts the smaller side of each join on the right, the build side of a
+ * hash join. A Volcano search over all join orders would need physical operators for the tables, which only exist in
+ * the target warehouse.
+ */
+public class JoinOrderOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(JoinOrderOptimizer.class);
+
+    private final TableCatalog catalog;
+    private final Program program;
+
+    /**
+     * Creates an optimizer estimating the cost of join orders with the given catalog.
+     *
+     * @param catalog The statistics of the tables.
+     */
+    public JoinOrderOptimizer(TableCatalog catalog) {
+        this.catalog = catalog;
+
+        HepProgram hepProgram = new HepProgramBuilder()
+                .addRuleInstance(CoreRules.FILTER_INTO_JOIN)
+                .addMatchOrder(HepMatchOrder.BOTTOM_UP)
+                .addRuleInstance(CoreRules.JOIN_TO_MULTI_JOIN)
+                .addRuleInstance(CoreRules.MULTI_JOIN_OPTIMIZE)
+                .build();
+        this.program = Programs.of(hepProgram, true, CatalogMetadata.provider(catalog));
+    }
+
+    /**
+     * Reorders the joins of a RelNode, keeping the names of its output fields. If the rules fail on the plan, the
+     * original RelNode is returned.
+     *
+     * @param rel The RelNode to optimize.
+     * @return The optimized RelNode.
+     */
+    public RelNode optimize(RelNode rel) {
+        RelNode optimized;
+        try {
+            // The program installs the catalog provider on the cluster shared with the converter
+            optimized = CatalogMetadata.restoringProvider(rel.getCluster(), () ->
+                    program.run(rel.getCluster().getPlanner(), catalog.attach(rel), rel.getTraitSet(),
+                            Collections.emptyList(), Collections.emptyList()));
+        } catch (RuntimeException e) {
+            logger.warn("Join reordering failed, keeping the original plan", e);
+            return rel;
+        }
+
+        return PlanOptimizer.withFieldNames(optimized, rel.getRowType().getFieldNames());
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads parameter sets, each one giving the values of the Pig parameters of one conversion.
+ * <p>
+ * Files ending with {@code .jsonl} or {@code .json} hold one JSON object per line, e.g.
+ * {@code {"tenant": "acme", "n": 10}}. Other files are read as CSV: the header row names the parameters and each
+ * following row is a parameter set. CSV values may be double-quoted to contain commas, doubled quotes escaping
+ * quotes. Blank lines are ignored in both formats.
+ */
+public final class ParameterSets {
+
+    private ParameterSets() {
+    }
+
+    /**
+     * Reads the parameter sets of a file.
+     *
+     * @param file Path of the CSV or JSON Lines file.
+     * @return The parameter sets, in file order, each one keeping the order of its parameters.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is malformed.
+     */
+    public static List<Map<String, String>> read(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return readJsonLines(file);
+        }
+        return readCsv(file);
+    }
+
+    private static List<Map<String, String>> readJsonLines(Path file) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Map<String, String>> parameterSets = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                JsonNode json = mapper.readTree(line);
+                if (!json.isObject()) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " of " + file + " is not a JSON object.");
+                }
+                Map<String, String> parameters = new LinkedHashMap<>();
+                for (Iterator<Map.Entry<String, JsonNode>> fields = json.fields(); fields.hasNext(); ) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    if (field.getValue().isContainerNode()) {
+                        throw new IllegalArgumentException("Parameter " + field.getKey() + " at line " + lineNumber +
+                                " of " + file + " is not a scalar value.");
+                    }
+                    parameters.put(field.getKey(), field.getValue().asText());
+                }
+                parameterSets.add(parameters);
+            }
+        }
+        return parameterSets;
+    }
+
+    private static List<Map<String, String>> readCsv(Path file) throws IOException {
+        List<Map<String, String>> parameterSets = new ArrayList<>();
+        List<String> header = null;
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+
+            List<String> values = parseCsvLine(line);
+            if (header == null) {
+                header = values;
+                continue;
+            }
+            if (values.size() != header.size()) {
+                throw new IllegalArgumentException("Line " + lineNumber + " of " + file + " has " + values.size() +
+                        " value(s), expected " + header.size() + ".");
+            }
+
+            Map<String, String> parameters = new LinkedHashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                parameters.put(header.get(i), values.get(i));
+            }
+            parameterSets.add(parameters);
+        }
+        return parameterSets;
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+}
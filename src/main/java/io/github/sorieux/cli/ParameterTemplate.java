@@ -0,0 +1,208 @@
+package io.github.sorieux.cli;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * SQL template shared by the parameter sets of a script whose values have the same shape, so that a script is
+ * translated once for many parameter sets.
+ * <p>
+ * Each parameter value is split into word runs ({@code [A-Za-z0-9_]+}) and separators. Two values have the same
+ * shape when they have the same separators and their runs are of the same kind: integers, or other words. The script
+ * is converted once with every run that differs between the parameter sets replaced by a unique sentinel of its kind,
+ * e.g. {@code sales/2024-12-31.csv} becomes {@code sales/100000007-100000014-100000021.csv} for sets only differing by
+ * date, and the SQL of a parameter set is obtained by replacing the sentinels by the runs of its values. Runs that
+ * would not be translated as they are written, such as numbers with leading zeros, are words: a template of a script
+ * using them as numbers fails or differs from their conversion.
+ * <p>
+ * Shapes cannot capture everything Pig and Calcite do with a value: a parameter used as a keyword, or compared to a
+ * constant and folded, e.g. {@code FILTER A BY '$mode' == 'full'}, changes the SQL beyond its own text. Callers are
+ * expected to check a template with {@link #isSound(String, Map)}, and against a full conversion of one of its
+ * parameter sets, before using it.
+ */
+public class ParameterTemplate {
+
+    private static final Pattern RUN_PATTERN = Pattern.compile("[A-Za-z0-9_]+");
+    private static final Pattern INTEGER_PATTERN = Pattern.compile("[1-9][0-9]{0,8}");
+
+    private static final String WORD_SENTINEL_PREFIX = "zqz";
+    private static final String WORD_SENTINEL_SUFFIX = "z";
+    // Nine-digit sentinels keep the type of the numbers as INTEGER while being unlikely to appear in a script
+    private static final int NUMBER_SENTINEL_BASE = 100_000_000;
+    private static final int NUMBER_SENTINEL_STEP = 7;
+
+    // References to parameters, and STORE locations, whose values never reach the SQL
+    private static final Pattern USE_PATTERN = Pattern.compile("\\$\\{(\\w+)}|\\$(\\w+)");
+    private static final Pattern STORE_LOCATION_PATTERN = Pattern.compile("(?i)\\bINTO\\s+'(?:[^'\\\\]|\\\\.)*'");
+
+    private final Map<String, String> sentinelParameters = new LinkedHashMap<>();
+    // Parameter name and run index of each sentinel
+    private final Map<String, String> sentinelRuns = new LinkedHashMap<>();
+    // Parameter name of each sentinel
+    private final Map<String, String> sentinelNames = new LinkedHashMap<>();
+    private final Pattern sentinelPattern;
+
+    /**
+     * Creates the template of parameter sets having the same shape.
+     *
+     * @param parameterSets Parameter sets with the same shape, see {@link #shapeOf(Map)}.
+     */
+    public ParameterTemplate(List<Map<String, String>> parameterSets) {
+        Map<String, String> parameters = parameterSets.get(0);
+        int words = 0;
+        int numbers = 0;
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            List<List<String>> otherRuns = parameterSets.stream()
+                    .map(parameterSet -> runsOf(parameterSet.get(parameter.getKey())))
+                    .collect(Collectors.toList());
+
+            StringBuilder sentinelValue = new StringBuilder();
+            Matcher run = RUN_PATTERN.matcher(parameter.getValue());
+            int end = 0;
+            int runIndex = 0;
+            while (run.find()) {
+                int index = runIndex++;
+                sentinelValue.append(parameter.getValue(), end, run.start());
+                end = run.end();
+                // Runs common to all the sets are converted as they are
+                if (otherRuns.stream().allMatch(runs -> runs.get(index).equals(run.group()))) {
+                    sentinelValue.append(run.group());
+                    continue;
+                }
+
+                String sentinel = isInteger(run.group())
+                        ? String.valueOf(NUMBER_SENTINEL_BASE + NUMBER_SENTINEL_STEP * ++numbers)
+                        : WORD_SENTINEL_PREFIX + words++ + WORD_SENTINEL_SUFFIX;
+                sentinelValue.append(sentinel);
+                sentinelRuns.put(sentinel, parameter.getKey() + "#" + index);
+                sentinelNames.put(sentinel, parameter.getKey());
+            }
+            sentinelValue.append(parameter.getValue().substring(end));
+            sentinelParameters.put(parameter.getKey(), sentinelValue.toString());
+        }
+
+        // Longest sentinels first, so that no sentinel is replaced by the prefix of another one
+        sentinelPattern = sentinelRuns.isEmpty() ? null : Pattern.compile(sentinelRuns.keySet().stream()
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|")));
+    }
+
+    /**
+     * Computes the shape of a parameter set. Parameter sets with the same shape share a template.
+     *
+     * @param parameters The parameter set.
+     * @return The shape.
+     */
+    public static String shapeOf(Map<String, String> parameters) {
+        StringBuilder shape = new StringBuilder();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            shape.append(parameter.getKey()).append('=');
+            Matcher run = RUN_PATTERN.matcher(parameter.getValue());
+            int end = 0;
+            while (run.find()) {
+                shape.append(parameter.getValue(), end, run.start()).append(isInteger(run.group()) ? "{n}" : "{w}");
+                end = run.end();
+            }
+            shape.append(parameter.getValue().substring(end)).append('\n');
+        }
+        return shape.toString();
+    }
+
+    /**
+     * @return The parameter set to convert the script with to obtain the SQL template.
+     */
+    public Map<String, String> getSentinelParameters() {
+        return sentinelParameters;
+    }
+
+    /**
+     * Counts the uses of the parameters of a script, {@code $name} and {@code ${name}} references outside of STORE
+     * locations.
+     *
+     * @param script The text of the Pig script.
+     * @return The number of uses of each parameter used by the script.
+     */
+    public static Map<String, Integer> usesOf(String script) {
+        Map<String, Integer> uses = new HashMap<>();
+        Matcher use = USE_PATTERN.matcher(STORE_LOCATION_PATTERN.matcher(script).replaceAll("INTO ''"));
+        while (use.find()) {
+            uses.merge(use.group(1) != null ? use.group(1) : use.group(2), 1, Integer::sum);
+        }
+        return uses;
+    }
+
+    /**
+     * Checks that a SQL template keeps every use of the sentinels: each sentinel occurs in the SQL at least as many
+     * times as its parameter is used by the script. A sentinel folded into a constant, or dropped with the expression
+     * using it, no longer occurs in the SQL, and the SQL of other values may then differ by more than the values.
+     *
+     * @param templateSql The SQL converted with the sentinel parameters.
+     * @param uses        The number of uses of each parameter, see {@link #usesOf(String)}.
+     * @return Whether the SQL of the parameter sets can be rendered from the template.
+     */
+    public boolean isSound(String templateSql, Map<String, Integer> uses) {
+        if (sentinelPattern == null) {
+            return true;
+        }
+
+        Map<String, Integer> occurrences = new HashMap<>();
+        Matcher sentinel = sentinelPattern.matcher(templateSql);
+        while (sentinel.find()) {
+            occurrences.merge(sentinel.group(), 1, Integer::sum);
+        }
+        return sentinelNames.entrySet().stream().allMatch(sentinelName ->
+                occurrences.getOrDefault(sentinelName.getKey(), 0) >= uses.getOrDefault(sentinelName.getValue(), 0));
+    }
+
+    /**
+     * Renders the SQL of a parameter set from the SQL template.
+     *
+     * @param templateSql The SQL converted with the sentinel parameters.
+     * @param parameters  A parameter set with the same shape as the template.
+     * @return The SQL of the parameter set.
+     */
+    public String render(String templateSql, Map<String, String> parameters) {
+        if (sentinelPattern == null) {
+            return templateSql;
+        }
+
+        Map<String, String> runs = new LinkedHashMap<>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            Matcher run = RUN_PATTERN.matcher(parameter.getValue());
+            int runIndex = 0;
+            while (run.find()) {
+                runs.put(parameter.getKey() + "#" + runIndex++, run.group());
+            }
+        }
+
+        Matcher sentinel = sentinelPattern.matcher(templateSql);
+        StringBuilder sql = new StringBuilder(templateSql.length());
+        while (sentinel.find()) {
+            String value = runs.get(sentinelRuns.get(sentinel.group()));
+            sentinel.appendReplacement(sql, Matcher.quoteReplacement(value));
+        }
+        sentinel.appendTail(sql);
+        return sql.toString();
+    }
+
+    private static List<String> runsOf(String value) {
+        List<String> runs = new ArrayList<>();
+        Matcher run = RUN_PATTERN.matcher(value);
+        while (run.find()) {
+            runs.add(run.group());
+        }
+        return runs;
+    }
+
+    private static boolean isInteger(String run) {
+        return INTEGER_PATTERN.matcher(run).matches();
+    }
+}
@@ -0,0 +1,394 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeFamily;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.tools.RelBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Maps the paths LOADed by the scripts to warehouse tables and their partition columns, read from a local JSON file,
+ * so that the generated SQL filters the partitions the script reads instead of scanning the whole table.
+ * <p>
+ * Path templates are keyed by path, {@code {name}} standing for the value of the partition column {@code name} and
+ * {@code *} for any part of a path segment:
+ * <pre>
+ * {
+ *   "/data/events/dt={dt}": {"table": "warehouse.events"},
+ *   "/data/logs/{region}/{date}/*": {"table": "warehouse.logs"}
+ * }
+ * </pre>
+ * The scan of a LOAD whose path matches a template is replaced by a scan of the table, filtered on the partition
+ * columns, the columns missing from the LOAD schema being added as {@code VARCHAR} columns. The Hadoop globs of the
+ * path become predicates: {@code dt=2024-01-01} gives {@code dt = '2024-01-01'}, {@code dt={2024-01-01,2024-01-02}}
+ * gives {@code dt IN (...)} and {@code dt=2024-01-*} gives {@code dt LIKE '2024-01-%'}. Character classes such as
+ * {@code [12]} have no SQL equivalent; such columns are not filtered.
+ * <p>
+ * The Pig translation only keeps the file name of a path in its table name, e.g. {@code transactions.csv}: scans are
+ * matched to the LOAD statements whose path ends with their table name. Scans matched by several LOAD paths are left
+ * unchanged.
+ */
+public class PartitionMapping {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionMapping.class);
+
+    private static final Pattern LOAD_PATTERN = Pattern.compile("(?i)\\bLOAD\\s+'((?:[^'\\\\]|\\\\.)*)'");
+    // %declare name value or %default name value, the value being optionally quoted
+    private static final Pattern DECLARE_PATTERN =
+            Pattern.compile("(?im)^\\s*%(declare|default)\\s+(\\w+)\\s+('(?:[^'\\\\]|\\\\.)*'|\"[^\"]*\"|\\S+)");
+    private static final Pattern PARAMETER_PATTERN = Pattern.compile("\\$\\{(\\w+)}|\\$(\\w+)");
+    private static final Pattern COMMENT_PATTERN = Pattern.compile("(?s)/\\*.*?\\*/|--[^\\n]*");
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{(\\w+)}|\\*");
+    private static final int MAX_ALTERNATIVES = 1000;
+
+    private final List<PathTemplate> templates;
+    private final String digest;
+
+    private PartitionMapping(List<PathTemplate> templates, String digest) {
+        this.templates = templates;
+        this.digest = digest;
+    }
+
+    /**
+     * A path template and its table.
+     */
+    static final class PathTemplate {
+
+        final Pattern pattern;
+        final List<String> columns;
+        final List<String> table;
+
+        PathTemplate(Pattern pattern, List<String> columns, List<String> table) {
+            this.pattern = pattern;
+            this.columns = columns;
+            this.table = table;
+        }
+    }
+
+    /**
+     * Reads a partition mapping file.
+     *
+     * @param file Path of the JSON mapping.
+     * @return The mapping.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If a template has no table.
+     */
+    public static PartitionMapping read(Path file) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        JsonNode json = new ObjectMapper().readTree(content);
+
+        List<PathTemplate> templates = new ArrayList<>();
+        for (Iterator<Map.Entry<String, JsonNode>> entries = json.fields(); entries.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            String table = entry.getValue().path("table").asText("");
+            if (table.isEmpty()) {
+                throw new IllegalArgumentException("Path template " + entry.getKey() + " of the partition mapping "
+                        + file + " has no table.");
+            }
+            templates.add(compile(entry.getKey(), Arrays.asList(table.split("\\."))));
+        }
+        return new PartitionMapping(templates, ConversionCache.digest(content));
+    }
+
+    /**
+     * @return The SHA-256 digest of the mapping content, which changes when the mapping changes.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Lists the paths LOADed by a script, with their parameters resolved. As in Pig, {@code %declare} values take
+     * precedence over the given parameters, which take precedence over the {@code %default} values.
+     *
+     * @param script The text of the Pig script.
+     * @param params The values of the Pig parameters.
+     * @return The LOADed paths, in script order.
+     */
+    public static List<String> loadPaths(String script, Map<String, String> params) {
+        String code = COMMENT_PATTERN.matcher(script).replaceAll("");
+        Map<String, String> values = new HashMap<>();
+        Map<String, String> declared = new HashMap<>();
+        Matcher declare = DECLARE_PATTERN.matcher(code);
+        while (declare.find()) {
+            String value = declare.group(3);
+            if (value.length() >= 2 && (value.startsWith("'") || value.startsWith("\""))) {
+                value = value.substring(1, value.length() - 1);
+            }
+            (declare.group(1).equalsIgnoreCase("declare") ? declared : values).put(declare.group(2), value);
+        }
+        values.putAll(params);
+        values.putAll(declared);
+
+        List<String> paths = new ArrayList<>();
+        Matcher load = LOAD_PATTERN.matcher(code);
+        while (load.find()) {
+            paths.add(PARAMETER_PATTERN.matcher(load.group(1)).replaceAll(reference -> {
+                String name = reference.group(1) != null ? reference.group(1) : reference.group(2);
+                return Matcher.quoteReplacement(values.getOrDefault(name, reference.group()));
+            }));
+        }
+        return paths;
+    }
+
+    /**
+     * Replaces the scans of the LOADed paths matching a template by filtered scans of their table.
+     *
+     * @param relNodes  The RelNodes of a script.
+     * @param loadPaths The paths LOADed by the script, see {@link #loadPaths(String, Map)}.
+     * @return The rewritten RelNodes.
+     */
+    public List<RelNode> apply(List<RelNode> relNodes, List<String> loadPaths) {
+        if (templates.isEmpty() || loadPaths.isEmpty()) {
+            return relNodes;
+        }
+        return relNodes.stream().map(rel -> rel.accept(new RelShuttleImpl() {
+            @Override
+            public RelNode visit(TableScan scan) {
+                List<String> names = scan.getTable().getQualifiedName();
+                List<String> paths = loadPaths.stream()
+                        .filter(path -> matchesTableName(path, names))
+                        .distinct()
+                        .collect(Collectors.toList());
+                if (paths.size() != 1) {
+                    if (paths.size() > 1) {
+                        logger.warn("Table {} is LOADed from several paths {}, its partitions are not mapped", names, paths);
+                    }
+                    return scan;
+                }
+                return rewrite(scan, paths.get(0));
+            }
+        })).collect(Collectors.toList());
+    }
+
+    private RelNode rewrite(TableScan scan, String path) {
+        String normalizedPath = normalize(path);
+        for (PathTemplate template : templates) {
+            Matcher matcher = template.pattern.matcher(normalizedPath);
+            if (matcher.matches()) {
+                Map<String, String> partitions = new LinkedHashMap<>();
+                for (int i = 0; i < template.columns.size(); i++) {
+                    partitions.put(template.columns.get(i), matcher.group(i + 1));
+                }
+                return partitionedScan(scan, template.table, partitions);
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * Creates a scan of a partitioned table, filtered on the values of its partition columns and projected on the
+     * columns of the original scan.
+     */
+    private static RelNode partitionedScan(TableScan scan, List<String> table, Map<String, String> partitions) {
+        RelDataType rowType = scan.getRowType();
+        RelDataTypeFactory typeFactory = scan.getCluster().getTypeFactory();
+        RelDataType varchar = typeFactory.createTypeWithNullability(typeFactory.createSqlType(SqlTypeName.VARCHAR), true);
+
+        RelDataTypeFactory.Builder tableType = typeFactory.builder().addAll(rowType.getFieldList());
+        Map<String, Integer> columnIndexes = new LinkedHashMap<>();
+        int addedColumns = 0;
+        for (String column : partitions.keySet()) {
+            RelDataTypeField field = rowType.getField(column, false, false);
+            if (field != null) {
+                columnIndexes.put(column, field.getIndex());
+            } else {
+                columnIndexes.put(column, rowType.getFieldCount() + addedColumns++);
+                tableType.add(column, varchar);
+            }
+        }
+
+        RelBuilder builder = RelFactories.LOGICAL_BUILDER.create(scan.getCluster(), null);
+        builder.push(RelTables.scan(scan.getCluster(), table, tableType.build()));
+
+        List<RexNode> conditions = new ArrayList<>();
+        for (Map.Entry<String, String> partition : partitions.entrySet()) {
+            RexNode column = builder.field(columnIndexes.get(partition.getKey()));
+            if (column.getType().getSqlTypeName().getFamily() != SqlTypeFamily.CHARACTER) {
+                column = builder.cast(column, SqlTypeName.VARCHAR);
+            }
+            RexNode condition = globCondition(builder, column, partition.getValue());
+            if (condition == null) {
+                logger.warn("Partition {}={} of table {} has no SQL equivalent, it is not filtered",
+                        partition.getKey(), partition.getValue(), table);
+            } else {
+                conditions.add(condition);
+            }
+        }
+        return builder.filter(conditions)
+                .project(builder.fields().subList(0, rowType.getFieldCount()))
+                .build();
+    }
+
+    /**
+     * Translates the value of a partition column in a Hadoop glob to a predicate: an equality or IN list for the
+     * literal alternatives, a LIKE for each alternative with {@code *} or {@code ?}.
+     *
+     * @return The predicate, or null if the glob has no SQL equivalent.
+     */
+    static RexNode globCondition(RelBuilder builder, RexNode column, String glob) {
+        if (glob.matches(".*[\\[\\]\\\\].*")) {
+            return null;
+        }
+        List<String> alternatives = expandBraces(glob);
+        if (alternatives == null) {
+            return null;
+        }
+
+        List<RexNode> literals = new ArrayList<>();
+        List<RexNode> conditions = new ArrayList<>();
+        for (String alternative : alternatives.stream().distinct().collect(Collectors.toList())) {
+            if (alternative.indexOf('*') < 0 && alternative.indexOf('?') < 0) {
+                literals.add(builder.literal(alternative));
+                continue;
+            }
+
+            StringBuilder pattern = new StringBuilder();
+            boolean escaped = false;
+            for (char c : alternative.toCharArray()) {
+                if (c == '*') {
+                    pattern.append('%');
+                } else if (c == '?') {
+                    pattern.append('_');
+                } else if (c == '%' || c == '_' || c == '\\') {
+                    pattern.append('\\').append(c);
+                    escaped = true;
+                } else {
+                    pattern.append(c);
+                }
+            }
+            conditions.add(escaped
+                    ? builder.call(SqlStdOperatorTable.LIKE, column, builder.literal(pattern.toString()), builder.literal("\\"))
+                    : builder.call(SqlStdOperatorTable.LIKE, column, builder.literal(pattern.toString())));
+        }
+
+        if (literals.size() == 1) {
+            conditions.add(0, builder.equals(column, literals.get(0)));
+        } else if (!literals.isEmpty()) {
+            conditions.add(0, builder.in(column, literals));
+        }
+        return builder.or(conditions);
+    }
+
+    /**
+     * Expands the {@code {a,b}} alternatives of a glob, nested ones included.
+     *
+     * @return The alternatives, or null if the braces are unbalanced or the alternatives too many.
+     */
+    private static List<String> expandBraces(String glob) {
+        int open = glob.indexOf('{');
+        if (open < 0) {
+            return glob.indexOf('}') < 0 ? List.of(glob) : null;
+        }
+
+        // Finds the matching closing brace and the top-level commas between them
+        List<Integer> commas = new ArrayList<>();
+        int depth = 0;
+        int close = -1;
+        for (int i = open; i < glob.length() && close < 0; i++) {
+            char c = glob.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                close = i;
+            } else if (c == ',' && depth == 1) {
+                commas.add(i);
+            }
+        }
+        if (close < 0) {
+            return null;
+        }
+
+        List<String> options = new ArrayList<>();
+        int start = open + 1;
+        for (int comma : commas) {
+            options.add(glob.substring(start, comma));
+            start = comma + 1;
+        }
+        options.add(glob.substring(start, close));
+
+        List<String> alternatives = new ArrayList<>();
+        String prefix = glob.substring(0, open);
+        String suffix = glob.substring(close + 1);
+        for (String option : options) {
+            List<String> expanded = expandBraces(prefix + option + suffix);
+            if (expanded == null || alternatives.size() + expanded.size() > MAX_ALTERNATIVES) {
+                return null;
+            }
+            alternatives.addAll(expanded);
+        }
+        return alternatives;
+    }
+
+    /**
+     * Compiles a path template to a pattern capturing the values of its partition columns.
+     */
+    private static PathTemplate compile(String template, List<String> table) {
+        StringBuilder regex = new StringBuilder();
+        List<String> columns = new ArrayList<>();
+        String normalized = normalize(template);
+        Matcher placeholder = PLACEHOLDER_PATTERN.matcher(normalized);
+        int last = 0;
+        while (placeholder.find()) {
+            regex.append(Pattern.quote(normalized.substring(last, placeholder.start())));
+            if (placeholder.group(1) != null) {
+                columns.add(placeholder.group(1));
+                regex.append("([^/]*)");
+            } else {
+                regex.append("[^/]*");
+            }
+            last = placeholder.end();
+        }
+        regex.append(Pattern.quote(normalized.substring(last)));
+        return new PathTemplate(Pattern.compile(regex.toString()), columns, table);
+    }
+
+    /**
+     * Whether a scan of the given table reads a path: the Pig translation names the table after the file name of
+     * the path, split on dots, e.g. {@code transactions.csv} for {@code data/input/transactions.csv}.
+     */
+    private static boolean matchesTableName(String path, List<String> names) {
+        String normalizedPath = normalize(path);
+        String tableName = normalize(String.join(".", names));
+        return normalizedPath.equals(tableName)
+                || normalizedPath.endsWith("/" + tableName)
+                || tableName.endsWith("/" + normalizedPath);
+    }
+
+    /**
+     * Removes the file scheme and the trailing slashes of a path.
+     */
+    private static String normalize(String path) {
+        String normalized = path.trim().replaceFirst("^(?i)file:(//)?", "");
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+}
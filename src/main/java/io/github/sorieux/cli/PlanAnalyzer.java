@@ -0,0 +1,251 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.Filter;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.Project;
+import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Estimates the cost of the queries generated for each STORE of a script and flags the performance anti-patterns
+ * of their plans, so that the most expensive queries can be tuned before deployment.
+ * <p>
+ * Row counts and cumulative costs come from Calcite's {@link RelMetadataQuery}; without a {@link TableCatalog},
+ * every table is assumed to have the default row count of Calcite, which only makes the estimates comparable between
+ * queries. The anti-patterns are:
+ * <ul>
+ *     <li>{@link #CARTESIAN_JOIN}: a join without condition;</li>
+ *     <li>{@link #NON_EQUI_JOIN}: a join whose condition has no equality between its inputs, which cannot be a hash
+ *     join;</li>
+ *     <li>{@link #SORT_WITHOUT_LIMIT}: an ORDER BY sorting all the rows;</li>
+ *     <li>{@link #FILTER_ABOVE_JOIN}: a filter applied to the result of a join rather than to its inputs;</li>
+ *     <li>{@link #UNBOUNDED_DISTINCT}: a DISTINCT, or an aggregate over distinct values, without a LIMIT above it.</li>
+ * </ul>
+ * Queries may be added from any thread.
+ */
+public class PlanAnalyzer {
+
+    public static final String CARTESIAN_JOIN = "CARTESIAN_JOIN";
+    public static final String NON_EQUI_JOIN = "NON_EQUI_JOIN";
+    public static final String SORT_WITHOUT_LIMIT = "SORT_WITHOUT_LIMIT";
+    public static final String FILTER_ABOVE_JOIN = "FILTER_ABOVE_JOIN";
+    public static final String UNBOUNDED_DISTINCT = "UNBOUNDED_DISTINCT";
+
+    private final TableCatalog catalog;
+    private final Queue<Map<String, Object>> queries = new ConcurrentLinkedQueue<>();
+    private final Queue<Map<String, Object>> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param catalog The statistics of the tables, null if unknown.
+     */
+    public PlanAnalyzer(TableCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Analyzes the RelNodes of a script, one per STORE.
+     *
+     * @param script   The name of the script.
+     * @param relNodes The RelNodes of the script, as they are unparsed.
+     */
+    public void add(String script, List<RelNode> relNodes) {
+        for (int i = 0; i < relNodes.size(); i++) {
+            RelNode rel = relNodes.get(i);
+            int store = i + 1;
+            if (catalog == null) {
+                queries.add(analyze(script, store, rel));
+            } else {
+                // The cluster is shared with the converter, its provider is restored once the query is analyzed
+                queries.add(CatalogMetadata.restoringProvider(rel.getCluster(), () -> {
+                    rel.getCluster().setMetadataProvider(CatalogMetadata.provider(catalog));
+                    rel.getCluster().invalidateMetadataQuery();
+                    return analyze(script, store, catalog.attach(rel));
+                }));
+            }
+        }
+    }
+
+    private static Map<String, Object> analyze(String script, int store, RelNode rel) {
+        RelMetadataQuery mq = rel.getCluster().getMetadataQuery();
+
+        Map<String, Object> query = new LinkedHashMap<>();
+        query.put("script", script);
+        query.put("store", store);
+        query.put("estimatedRows", mq.getRowCount(rel));
+
+        RelOptCost cost = mq.getCumulativeCost(rel);
+        Map<String, Object> cumulativeCost = new LinkedHashMap<>();
+        cumulativeCost.put("rows", cost == null ? null : finite(cost.getRows()));
+        cumulativeCost.put("cpu", cost == null ? null : finite(cost.getCpu()));
+        cumulativeCost.put("io", cost == null ? null : finite(cost.getIo()));
+        query.put("cumulativeCost", cumulativeCost);
+
+        List<Map<String, Object>> findings = new ArrayList<>();
+        findAntiPatterns(rel, mq, false, findings);
+        query.put("antiPatterns", findings);
+        return query;
+    }
+
+    /**
+     * Records a script that could not be translated.
+     *
+     * @param script The name of the script.
+     * @param error  The failure of the translation.
+     */
+    public void addFailure(String script, Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        Map<String, Object> failure = new LinkedHashMap<>();
+        failure.put("script", script);
+        failure.put("failure", cause.getClass().getSimpleName() + ": " + cause.getMessage());
+        failures.add(failure);
+    }
+
+    /**
+     * Ranks the analyzed queries, the most expensive first: by cumulative cost in rows, then by number of
+     * anti-patterns.
+     *
+     * @return The queries, each one with its rank.
+     */
+    public List<Map<String, Object>> ranked() {
+        List<Map<String, Object>> ranked = queries.stream()
+                .sorted(Comparator.comparingDouble(PlanAnalyzer::costRows)
+                        .thenComparingInt(query -> ((List<?>) query.get("antiPatterns")).size())
+                        .reversed()
+                        .thenComparing(query -> (String) query.get("script"))
+                        .thenComparingInt(query -> (Integer) query.get("store")))
+                .collect(Collectors.toList());
+        for (int i = 0; i < ranked.size(); i++) {
+            Map<String, Object> query = new LinkedHashMap<>();
+            query.put("rank", i + 1);
+            query.putAll(ranked.get(i));
+            ranked.set(i, query);
+        }
+        return ranked;
+    }
+
+    /**
+     * Prints the most expensive queries and their anti-patterns.
+     *
+     * @param out The stream to print to.
+     * @param top Number of queries to print.
+     */
+    public void printSummary(PrintStream out, int top) {
+        List<Map<String, Object>> ranked = ranked();
+        out.printf("Analyzed %d query(ies), %d script(s) failed to translate.%n", ranked.size(), failures.size());
+        ranked.stream().limit(top).forEach(query -> out.printf("  #%d %s, STORE %d: ~%.0f rows, cost %.3g rows, %s%n",
+                query.get("rank"), query.get("script"), query.get("store"), query.get("estimatedRows"), costRows(query),
+                ((List<?>) query.get("antiPatterns")).stream()
+                        .map(finding -> ((Map<?, ?>) finding).get("rule"))
+                        .distinct()
+                        .map(String::valueOf)
+                        .collect(Collectors.joining(", ", "[", "]"))));
+    }
+
+    /**
+     * Writes the ranked queries and the failures as JSON.
+     *
+     * @param report Path of the report.
+     * @throws IOException If the report cannot be written.
+     */
+    public void write(Path report) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("queries", ranked());
+        json.put("failures", failures.stream()
+                .sorted(Comparator.comparing(failure -> (String) failure.get("script")))
+                .collect(Collectors.toList()));
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+    }
+
+    /**
+     * Walks a plan, top-down, collecting its anti-patterns.
+     *
+     * @param rel      The node to check.
+     * @param mq       The metadata query of the plan.
+     * @param limited  Whether a LIMIT applies above the node.
+     * @param findings The anti-patterns found so far.
+     */
+    private static void findAntiPatterns(RelNode rel, RelMetadataQuery mq, boolean limited,
+                                         List<Map<String, Object>> findings) {
+        if (rel instanceof Join) {
+            Join join = (Join) rel;
+            if (join.getCondition().isAlwaysTrue()) {
+                findings.add(finding(CARTESIAN_JOIN, rel, mq, "Join without condition: every pair of rows is produced."));
+            } else if (join.analyzeCondition().pairs().isEmpty()) {
+                findings.add(finding(NON_EQUI_JOIN, rel, mq, "Join condition without equality between the inputs: "
+                        + join.getCondition() + "."));
+            }
+        } else if (rel instanceof Sort) {
+            Sort sort = (Sort) rel;
+            if (sort.fetch == null && !sort.getCollation().getFieldCollations().isEmpty()) {
+                findings.add(finding(SORT_WITHOUT_LIMIT, rel, mq, "ORDER BY without LIMIT sorts all the rows."));
+            }
+            limited = limited || sort.fetch != null;
+        } else if (rel instanceof Filter) {
+            RelNode input = ((Filter) rel).getInput();
+            if (input instanceof Project) {
+                input = ((Project) input).getInput();
+            }
+            if (input instanceof Join) {
+                findings.add(finding(FILTER_ABOVE_JOIN, rel, mq, "Filter applied after the join, the rows it removes "
+                        + "are joined first: " + ((Filter) rel).getCondition() + "."));
+            }
+        } else if (rel instanceof Aggregate && !limited) {
+            Aggregate aggregate = (Aggregate) rel;
+            boolean distinct = aggregate.getAggCallList().isEmpty()
+                    || aggregate.getAggCallList().stream().anyMatch(AggregateCall::isDistinct);
+            if (distinct) {
+                findings.add(finding(UNBOUNDED_DISTINCT, rel, mq, "DISTINCT over all the rows of its input, "
+                        + "without a LIMIT bounding its result."));
+            }
+        }
+
+        // A LIMIT above a join or an aggregate does not bound the rows their inputs produce
+        if (rel instanceof Join || rel instanceof Aggregate) {
+            limited = false;
+        }
+        for (RelNode input : rel.getInputs()) {
+            findAntiPatterns(input, mq, limited, findings);
+        }
+    }
+
+    private static Map<String, Object> finding(String rule, RelNode rel, RelMetadataQuery mq, String message) {
+        Map<String, Object> finding = new LinkedHashMap<>();
+        finding.put("rule", rule);
+        finding.put("node", rel.getRelTypeName() + "#" + rel.getId());
+        finding.put("estimatedRows", mq.getRowCount(rel));
+        finding.put("message", message);
+        return finding;
+    }
+
+    private static double costRows(Map<String, Object> query) {
+        Object rows = ((Map<?, ?>) query.get("cumulativeCost")).get("rows");
+        return rows == null ? Double.MAX_VALUE : (Double) rows;
+    }
+
+    private static Double finite(double value) {
+        return Double.isFinite(value) ? value : Double.MAX_VALUE;
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.sorieux.cli;
+
+import org.apache.calcite.plan.RelOptRule;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.RelFactories;
+import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
+import org.apache.calcite.rel.rules.CoreRules;
+import org.apache.calcite.tools.Program;
+import org.apache.calcite.tools.Programs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Rewrites the RelNodes produced by the Pig translation with a rule-based (Hep) program before they are unparsed,
+ * removing the redundant projections, nested subqueries and unpushed filters the translation leaves behind.
+ * <p>
+ * Rules are referenced by name; {@link #RULES} lists the available ones, all of them being applied by default.
+ */
+public class PlanOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanOptimizer.class);
+
+    /**
+     * Available rules, by name.
+     */
+    public static final Map<String, RelOptRule> RULES = createRules();
+
+    private final Program program;
+
+    /**
+     * Creates an optimizer applying all the available rules.
+     */
+    public PlanOptimizer() {
+        this(new ArrayList<>(RULES.keySet()));
+    }
+
+    /**
+     * Creates an optimizer applying the given rules until none of them matches anymore.
+     *
+     * @param ruleNames Names of the rules to apply, see {@link #RULES}.
+     * @throws IllegalArgumentException If a rule name is unknown.
+     */
+    public PlanOptimizer(List<String> ruleNames) {
+        List<RelOptRule> rules = new ArrayList<>();
+        for (String ruleName : ruleNames) {
+            RelOptRule rule = RULES.get(ruleName.trim().toUpperCase(Locale.ROOT));
+            if (rule == null) {
+                throw new IllegalArgumentException("Unknown optimization rule: " + ruleName + ". Available rules: " + RULES.keySet());
+            }
+            rules.add(rule);
+        }
+        this.program = Programs.hep(rules, true, DefaultRelMetadataProvider.INSTANCE);
+    }
+
+    /**
+     * Optimizes a RelNode, keeping the names of its output fields. If the rules fail on the plan, the original
+     * RelNode is returned.
+     *
+     * @param rel The RelNode to optimize.
+     * @return The optimized RelNode.
+     */
+    public RelNode optimize(RelNode rel) {
+        RelNode optimized;
+        try {
+            // The Hep program installs its metadata provider on the cluster shared with the converter
+            optimized = CatalogMetadata.restoringProvider(rel.getCluster(), () ->
+                    program.run(rel.getCluster().getPlanner(), rel, rel.getTraitSet(),
+                            Collections.emptyList(), Collections.emptyList()));
+        } catch (RuntimeException e) {
+            logger.warn("Optimization failed, keeping the original plan", e);
+            return rel;
+        }
+
+        // Removing a trivial projection may also remove the aliases the SQL must keep
+        return withFieldNames(optimized, rel.getRowType().getFieldNames());
+    }
+
+    /**
+     * Renames the output fields of a rewritten RelNode back to the names of the original one.
+     *
+     * @param rel        The rewritten RelNode.
+     * @param fieldNames The field names of the original RelNode.
+     * @return The RelNode, with a renaming projection on top if its field names differ.
+     */
+    static RelNode withFieldNames(RelNode rel, List<String> fieldNames) {
+        if (rel.getRowType().getFieldNames().equals(fieldNames)) {
+            return rel;
+        }
+        return RelFactories.LOGICAL_BUILDER.create(rel.getCluster(), null)
+                .push(rel)
+                .rename(fieldNames)
+                .build();
+    }
+
+    private static Map<String, RelOptRule> createRules() {
+        Map<String, RelOptRule> rules = new LinkedHashMap<>();
+        // Filter pushdown
+        rules.put("FILTER_INTO_JOIN", CoreRules.FILTER_INTO_JOIN);
+        rules.put("JOIN_CONDITION_PUSH", CoreRules.JOIN_CONDITION_PUSH);
+        rules.put("FILTER_PROJECT_TRANSPOSE", CoreRules.FILTER_PROJECT_TRANSPOSE);
+        rules.put("FILTER_AGGREGATE_TRANSPOSE", CoreRules.FILTER_AGGREGATE_TRANSPOSE);
+        rules.put("FILTER_MERGE", CoreRules.FILTER_MERGE);
+        // Projection merging and pruning
+        rules.put("PROJECT_MERGE", CoreRules.PROJECT_MERGE);
+        rules.put("PROJECT_REMOVE", CoreRules.PROJECT_REMOVE);
+        rules.put("PROJECT_JOIN_TRANSPOSE", CoreRules.PROJECT_JOIN_TRANSPOSE);
+        // Aggregate simplification
+        rules.put("AGGREGATE_PROJECT_MERGE", CoreRules.AGGREGATE_PROJECT_MERGE);
+        rules.put("AGGREGATE_REMOVE", CoreRules.AGGREGATE_REMOVE);
+        // Constant folding
+        rules.put("FILTER_REDUCE_EXPRESSIONS", CoreRules.FILTER_REDUCE_EXPRESSIONS);
+        rules.put("PROJECT_REDUCE_EXPRESSIONS", CoreRules.PROJECT_REDUCE_EXPRESSIONS);
+        rules.put("JOIN_REDUCE_EXPRESSIONS", CoreRules.JOIN_REDUCE_EXPRESSIONS);
+        return Collections.unmodifiableMap(rules);
+    }
+}
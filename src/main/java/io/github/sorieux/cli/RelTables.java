@@ -0,0 +1,63 @@
+package io.github.sorieux.cli;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.prepare.RelOptTableImpl;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.logical.LogicalTableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
+import org.apache.calcite.schema.impl.AbstractTable;
+
+import java.util.List;
+
+/**
+ * Creates table scans over tables that only exist in the generated SQL, such as shared subplans or warehouse
+ * tables. Such scans are unparsed as their qualified name by the RelToSqlConverter.
+ */
+public final class RelTables {
+
+    private RelTables() {
+    }
+
+    /**
+     * Creates a scan of a table without statistics.
+     *
+     * @param cluster The cluster of the plan the scan belongs to.
+     * @param names   The qualified name of the table.
+     * @param rowType The row type of the table.
+     * @return The table scan.
+     */
+    public static RelNode scan(RelOptCluster cluster, List<String> names, RelDataType rowType) {
+        return scan(cluster, names, rowType, Statistics.UNKNOWN);
+    }
+
+    /**
+     * Creates a scan of a table, exposing the given statistics to the planner.
+     *
+     * @param cluster   The cluster of the plan the scan belongs to.
+     * @param names     The qualified name of the table.
+     * @param rowType   The row type of the table.
+     * @param statistic The statistics of the table.
+     * @return The table scan.
+     */
+    public static RelNode scan(RelOptCluster cluster, List<String> names, RelDataType rowType, Statistic statistic) {
+        AbstractTable table = new AbstractTable() {
+            @Override
+            public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+                return rowType;
+            }
+
+            @Override
+            public Statistic getStatistic() {
+                return statistic;
+            }
+        };
+
+        return LogicalTableScan.create(cluster,
+                RelOptTableImpl.create(null, rowType, table, ImmutableList.copyOf(names)),
+                ImmutableList.of());
+    }
+}
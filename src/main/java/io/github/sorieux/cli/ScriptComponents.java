@@ -0,0 +1,246 @@
+package io.github.sorieux.cli;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Independent connected components of a Pig script: groups of statements linked by the aliases they define and
+ * reference, each feeding its own STOREs.
+ * <p>
+ * Each component is rendered as a script of its own, preceded by the statements every component may need:
+ * preprocessor lines such as {@code %declare}, {@code DEFINE} and {@code SET}. Statements not leading to any STORE are
+ * dropped, as the translation ignores them. An alias redefined by a later statement, e.g. {@code A = FILTER A BY ...},
+ * is linked to its previous definition. Field names equal to an alias are taken for a reference to it, which may
+ * merge components but never splits dependent statements.
+ * <p>
+ * Scripts that cannot be split safely have a single component, the script itself: scripts reading other files
+ * ({@code IMPORT}, {@code REGISTER}, {@code RUN}, {@code EXEC}), whose relative paths would not resolve from another
+ * location, and scripts with statements other than assignments, {@code SPLIT} and {@code STORE}.
+ */
+public final class ScriptComponents {
+
+    private static final Pattern ASSIGNMENT_PATTERN = Pattern.compile("(?s)^(\\w+)\\s*=(?!=)(.*)");
+    private static final Pattern STORE_PATTERN = Pattern.compile("(?is)^STORE\\s+(\\w+)\\s+INTO\\b.*");
+    private static final Pattern SPLIT_PATTERN = Pattern.compile("(?is)^SPLIT\\s+(\\w+)\\s+INTO\\b(.*)");
+    private static final Pattern SPLIT_BRANCH_PATTERN = Pattern.compile("(?i)(?:^|,)\\s*(\\w+)\\s+(?:IF|OTHERWISE)\\b");
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("(?<![$\\w])[A-Za-z_]\\w*");
+    private static final Set<String> HEADER_KEYWORDS = Set.of("DEFINE", "SET");
+
+    private final List<String> scripts;
+    private final int statementCount;
+
+    private ScriptComponents(List<String> scripts, int statementCount) {
+        this.scripts = Collections.unmodifiableList(scripts);
+        this.statementCount = statementCount;
+    }
+
+    /**
+     * Splits a script into its components.
+     *
+     * @param script The text of the Pig script.
+     * @return The components of the script.
+     */
+    public static ScriptComponents of(String script) {
+        List<String> header = new ArrayList<>();
+        List<String> statements = new ArrayList<>();
+        if (!split(script, header, statements)) {
+            return new ScriptComponents(List.of(script), statements.size());
+        }
+
+        int[] parents = new int[statements.size()];
+        boolean[] stores = new boolean[statements.size()];
+        Map<String, Integer> definitions = new HashMap<>();
+        for (int i = 0; i < statements.size(); i++) {
+            parents[i] = i;
+            String statement = statements.get(i);
+            String keyword = statement.split("\\s", 2)[0].toUpperCase(Locale.ROOT);
+
+            Matcher assignment = ASSIGNMENT_PATTERN.matcher(statement);
+            Matcher store = STORE_PATTERN.matcher(statement);
+            Matcher split = SPLIT_PATTERN.matcher(statement);
+            if (assignment.matches()) {
+                link(parents, i, references(assignment.group(2), definitions));
+                definitions.put(assignment.group(1), i);
+            } else if (store.matches()) {
+                link(parents, i, references(store.group(1), definitions));
+                stores[i] = true;
+            } else if (split.matches()) {
+                link(parents, i, references(split.group(1), definitions));
+                link(parents, i, references(withoutQuotes(split.group(2)), definitions));
+                Matcher branch = SPLIT_BRANCH_PATTERN.matcher(withoutQuotes(split.group(2)));
+                while (branch.find()) {
+                    definitions.put(branch.group(1), i);
+                }
+            } else if (HEADER_KEYWORDS.contains(keyword)) {
+                header.add(statement + ";");
+                statements.set(i, null);
+            } else {
+                return new ScriptComponents(List.of(script), statements.size());
+            }
+        }
+
+        // Components in the order of their first STORE, their statements in script order
+        Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int i = 0; i < statements.size(); i++) {
+            if (stores[i]) {
+                components.computeIfAbsent(find(parents, i), root -> new ArrayList<>());
+            }
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            List<Integer> component = components.get(find(parents, i));
+            if (component != null && statements.get(i) != null) {
+                component.add(i);
+            }
+        }
+        if (components.size() < 2) {
+            return new ScriptComponents(List.of(script), statements.size());
+        }
+
+        List<String> scripts = new ArrayList<>();
+        for (List<Integer> component : components.values()) {
+            StringBuilder componentScript = new StringBuilder();
+            header.forEach(line -> componentScript.append(line).append('\n'));
+            component.forEach(i -> componentScript.append(statements.get(i)).append(";\n"));
+            scripts.add(componentScript.toString());
+        }
+        return new ScriptComponents(scripts, statements.size());
+    }
+
+    /**
+     * @return The scripts of the components, in the order of their first STORE; the script itself if it has a single
+     * component or cannot be split.
+     */
+    public List<String> getScripts() {
+        return scripts;
+    }
+
+    /**
+     * @return Whether the script has several components.
+     */
+    public boolean isSplit() {
+        return scripts.size() > 1;
+    }
+
+    /**
+     * @return The number of statements of the script, preprocessor lines excluded.
+     */
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /**
+     * Splits a script into statements, without comments: preprocessor lines go to the header, and the other statements
+     * end with a semicolon outside quotes and nested blocks.
+     *
+     * @return false if the script reads other files or has unbalanced quotes or blocks.
+     */
+    private static boolean split(String script, List<String> header, List<String> statements) {
+        StringBuilder statement = new StringBuilder();
+        int depth = 0;
+        int length = script.length();
+        int i = 0;
+        while (i < length) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : 0;
+
+            if (c == '-' && next == '-') {
+                while (i < length && script.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && next == '*') {
+                int end = script.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return false;
+                }
+                statement.append(' ');
+                i = end + 2;
+            } else if (c == '%' && statement.toString().isBlank()) {
+                int end = script.indexOf('\n', i);
+                end = end < 0 ? length : end;
+                header.add(script.substring(i, end).trim());
+                i = end;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                int end = i + 1;
+                while (end < length && script.charAt(end) != c) {
+                    end += script.charAt(end) == '\\' ? 2 : 1;
+                }
+                if (end >= length) {
+                    return false;
+                }
+                statement.append(script, i, end + 1);
+                i = end + 1;
+            } else {
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth--;
+                }
+                if (c == ';' && depth == 0) {
+                    String text = statement.toString().trim();
+                    if (!text.isEmpty()) {
+                        statements.add(text);
+                    }
+                    statement.setLength(0);
+                } else {
+                    statement.append(c);
+                }
+                i++;
+            }
+        }
+        if (depth != 0 || !statement.toString().isBlank()) {
+            return false;
+        }
+
+        return statements.stream()
+                .map(text -> text.split("\\s", 2)[0].toUpperCase(Locale.ROOT))
+                .noneMatch(keyword -> keyword.equals("IMPORT") || keyword.equals("REGISTER")
+                        || keyword.equals("RUN") || keyword.equals("EXEC"));
+    }
+
+    /**
+     * Finds the statements defining the aliases referenced by an expression.
+     */
+    private static List<Integer> references(String expression, Map<String, Integer> definitions) {
+        List<Integer> references = new ArrayList<>();
+        Matcher identifier = IDENTIFIER_PATTERN.matcher(withoutQuotes(expression));
+        while (identifier.find()) {
+            Integer definition = definitions.get(identifier.group());
+            if (definition != null) {
+                references.add(definition);
+            }
+        }
+        return references;
+    }
+
+    private static String withoutQuotes(String expression) {
+        return expression.replaceAll("'(?:[^'\\\\]|\\\\.)*'", "''");
+    }
+
+    private static void link(int[] parents, int statement, List<Integer> references) {
+        for (int reference : references) {
+            parents[find(parents, reference)] = find(parents, statement);
+        }
+    }
+
+    private static int find(int[] parents, int statement) {
+        int root = statement;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        // Path compression
+        while (parents[statement] != root) {
+            int parent = parents[statement];
+            parents[statement] = root;
+            statement = parent;
+        }
+        return root;
+    }
+}
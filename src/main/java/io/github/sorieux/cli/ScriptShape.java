@@ -0,0 +1,146 @@
+package io.github.sorieux.cli;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shape of a Pig script: its text without comments, whitespace differences and literals.
+ * <p>
+ * Scripts with the same shape only differ by their string and numeric literals, {@code %declare} values included.
+ * The shape also provides a template of the script, each literal being replaced by a reference to a parameter named
+ * {@code __lit_<index>}, and the values of these parameters for the script, so that scripts of the same shape can be
+ * converted as parameter sets of a single template (see {@link ParameterTemplate}). String literals referencing Pig
+ * parameters, such as {@code '$input'}, are part of the shape.
+ */
+public final class ScriptShape {
+
+    static final String LITERAL_PREFIX = "__lit_";
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[0-9]+(\\.[0-9]+)?([eE][+-]?[0-9]+)?[LlFf]?");
+    // Statements reading other files, whose relative paths would not resolve from a template
+    private static final Pattern FILE_REFERENCE_PATTERN = Pattern.compile("(?i)\\b(IMPORT|REGISTER|RUN|EXEC)\\b");
+
+    private final String fingerprint;
+    private final String template;
+    private final Map<String, String> literals;
+    private final boolean referencesFiles;
+
+    private ScriptShape(String normalized, String template, Map<String, String> literals) {
+        this.fingerprint = Fingerprints.of(normalized);
+        this.template = template;
+        this.literals = Collections.unmodifiableMap(literals);
+        this.referencesFiles = FILE_REFERENCE_PATTERN.matcher(normalized).find();
+    }
+
+    /**
+     * Computes the shape of a script.
+     *
+     * @param script The text of the Pig script.
+     * @return The shape of the script.
+     */
+    public static ScriptShape of(String script) {
+        StringBuilder normalized = new StringBuilder();
+        StringBuilder template = new StringBuilder();
+        Map<String, String> literals = new LinkedHashMap<>();
+
+        int length = script.length();
+        int i = 0;
+        while (i < length) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : 0;
+
+            if (c == '-' && next == '-') {
+                // Line comment, the line break is kept
+                while (i < length && script.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && next == '*') {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                appendSpace(normalized);
+                template.append(' ');
+            } else if (c == '\'') {
+                int end = i + 1;
+                while (end < length && script.charAt(end) != '\'') {
+                    end += script.charAt(end) == '\\' ? 2 : 1;
+                }
+                String value = script.substring(i + 1, Math.min(end, length));
+                i = end + 1;
+
+                if (value.indexOf('$') >= 0 || value.indexOf('\n') >= 0) {
+                    normalized.append('\'').append(value).append('\'');
+                    template.append('\'').append(value).append('\'');
+                } else {
+                    String name = LITERAL_PREFIX + literals.size();
+                    literals.put(name, value);
+                    normalized.append("'?'");
+                    template.append("'$").append(name).append('\'');
+                }
+            } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                // Keywords, aliases, parameter and positional references ($0) are part of the shape
+                int end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(script.charAt(end)) || script.charAt(end) == '_')) {
+                    end++;
+                }
+                normalized.append(script, i, end);
+                template.append(script, i, end);
+                i = end;
+            } else if (Character.isDigit(c)) {
+                Matcher number = NUMBER_PATTERN.matcher(script).region(i, length);
+                number.lookingAt();
+                String name = LITERAL_PREFIX + literals.size();
+                literals.put(name, number.group());
+                normalized.append('?');
+                template.append('$').append(name);
+                i = number.end();
+            } else if (Character.isWhitespace(c)) {
+                appendSpace(normalized);
+                template.append(c);
+                i++;
+            } else {
+                normalized.append(c);
+                template.append(c);
+                i++;
+            }
+        }
+
+        return new ScriptShape(normalized.toString().trim(), template.toString(), literals);
+    }
+
+    /**
+     * @return The fingerprint of the shape, equal for scripts with the same shape.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return The script, its literals being replaced by parameter references.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return The values of the literals of the script, by parameter name.
+     */
+    public Map<String, String> getLiterals() {
+        return literals;
+    }
+
+    /**
+     * @return Whether the script imports macros or registers files, which a template cannot resolve.
+     */
+    public boolean referencesFiles() {
+        return referencesFiles;
+    }
+
+    private static void appendSpace(StringBuilder normalized) {
+        if (normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') {
+            normalized.append(' ');
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package io.github.sorieux.cli;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.core.Values;
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlExplainLevel;
+import org.apache.calcite.util.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts the subplans shared by the RelNodes of a script, e.g. the same LOAD/FILTER/JOIN subtree feeding several
+ * STOREs, so that they are emitted once.
+ * <p>
+ * Subplans are compared by a structural key, so identical subtrees are found whether the translation shares the same
+ * RelNode objects or builds equal copies. The key of a node is made of its own attributes and of the ids of the keys of
+ * its inputs, so that it is computed in time linear in the size of the node rather than of its subtree. Only maximal shared subtrees are extracted: a subtree is kept if it is
+ * referenced at least twice once the larger shared subtrees containing it are replaced by references.
+ * <p>
+ * In {@link Mode#CTE} mode, each statement starts with a {@code WITH} clause defining the shared subplans it uses,
+ * which deduplicates them within the statement; a plain table scan is not worth a common table expression and is not
+ * extracted. In {@link Mode#TEMP_TABLE} mode, each shared subplan, table scans included, is materialized once for the
+ * whole script with a {@code CREATE TEMPORARY TABLE ... AS} statement, or its equivalent in the dialect (see
+ * {@link SqlDialects#createTemporaryTable(SqlDialect, String, String)}), emitted before the statements using it.
+ */
+public class SharedSubplans {
+
+    /**
+     * How shared subplans are emitted.
+     */
+    public enum Mode {
+        CTE,
+        TEMP_TABLE
+    }
+
+    private static final String NAME_PREFIX = "shared_";
+
+    private final Mode mode;
+    private final Map<RelNode, String> keys = new IdentityHashMap<>();
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    private final Map<String, Integer> sizes = new HashMap<>();
+    private final Map<String, RelNode> representatives = new HashMap<>();
+    private final Set<String> shared;
+
+    // Filled while rewriting, definitions being added after the definitions they depend on
+    private final Map<String, RelNode> references = new HashMap<>();
+    private final Map<RelNode, String> referenceNames = new IdentityHashMap<>();
+    private final Map<String, RelNode> definitions = new LinkedHashMap<>();
+    private final List<RelNode> statements;
+
+    private SharedSubplans(List<RelNode> relNodes, Mode mode) {
+        this.mode = mode;
+        this.shared = findSharedSubplans(relNodes);
+        this.statements = relNodes.stream().map(this::rewrite).collect(Collectors.toList());
+    }
+
+    /**
+     * Extracts the shared subplans of the given RelNodes.
+     *
+     * @param relNodes The RelNodes of a script, one per statement.
+     * @param mode     How the shared subplans will be emitted.
+     * @return The rewritten statements and the shared subplans they reference.
+     */
+    public static SharedSubplans extract(List<RelNode> relNodes, Mode mode) {
+        return new SharedSubplans(relNodes, mode);
+    }
+
+    /**
+     * @return The definitions of the shared subplans, by name, each one after the definitions it references.
+     */
+    public Map<String, RelNode> getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * @return The statements, their shared subplans being replaced by references to their names.
+     */
+    public List<RelNode> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Generates the SQL statements of the script, passing each one to the sink as soon as it is generated.
+     *
+     * @param unparser Converts a RelNode to a SQL statement.
+     * @param dialect  The dialect of the SQL, used to quote the names of the shared subplans.
+     * @param sink     Receives the SQL statements, in execution order.
+     * @throws IllegalArgumentException In {@link Mode#TEMP_TABLE} mode, if the dialect has no temporary tables.
+     */
+    public void toSql(Function<RelNode, String> unparser, SqlDialect dialect, Consumer<String> sink) {
+        Map<String, String> definitionSql = new LinkedHashMap<>();
+        definitions.forEach((name, definition) -> definitionSql.put(name, unparser.apply(definition)));
+
+        if (mode == Mode.TEMP_TABLE) {
+            definitionSql.forEach((name, query) -> sink.accept(SqlDialects.createTemporaryTable(dialect, name, query)));
+            statements.forEach(statement -> sink.accept(unparser.apply(statement)));
+            return;
+        }
+
+        for (RelNode statement : statements) {
+            Set<String> used = usedDefinitions(statement);
+            String statementSql = unparser.apply(statement);
+            if (used.isEmpty()) {
+                sink.accept(statementSql);
+                continue;
+            }
+
+            String with = definitionSql.entrySet().stream()
+                    .filter(definition -> used.contains(definition.getKey()))
+                    .map(definition -> dialect.quoteIdentifier(definition.getKey()) + " AS (\n" +
+                            indent(definition.getValue()) + "\n)")
+                    .collect(Collectors.joining(",\n", "WITH ", "\n"));
+            sink.accept(with + statementSql);
+        }
+    }
+
+    /**
+     * Finds the maximal subplans referenced at least twice.
+     */
+    private Set<String> findSharedSubplans(List<RelNode> relNodes) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        Deque<RelNode> toVisit = new ArrayDeque<>(relNodes);
+        while (!toVisit.isEmpty()) {
+            RelNode node = toVisit.pop();
+            String key = keyOf(node);
+            representatives.putIfAbsent(key, node);
+            occurrences.merge(key, 1, Integer::sum);
+            toVisit.addAll(node.getInputs());
+        }
+
+        Set<String> candidates = occurrences.entrySet().stream()
+                .filter(occurrence -> occurrence.getValue() >= 2 && isShareable(representatives.get(occurrence.getKey())))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        // Drop, largest first, the candidates only referenced once from the larger shared subplans containing them
+        while (true) {
+            Map<String, Integer> referenceCounts = countReferences(relNodes, candidates);
+            Optional<String> unshared = candidates.stream()
+                    .filter(key -> referenceCounts.getOrDefault(key, 0) < 2)
+                    .max(Comparator.comparingInt(sizes::get));
+            if (unshared.isEmpty()) {
+                return candidates;
+            }
+            candidates.remove(unshared.get());
+        }
+    }
+
+    /**
+     * Counts the references to each candidate, once the candidates are replaced by references in the statements
+     * and in the definitions of the other candidates.
+     */
+    private Map<String, Integer> countReferences(List<RelNode> relNodes, Set<String> candidates) {
+        Map<String, Integer> referenceCounts = new HashMap<>();
+        Deque<RelNode> toVisit = new ArrayDeque<>(relNodes);
+        while (!toVisit.isEmpty()) {
+            RelNode node = toVisit.pop();
+            String key = keyOf(node);
+            if (!candidates.contains(key)) {
+                toVisit.addAll(node.getInputs());
+            } else if (referenceCounts.merge(key, 1, Integer::sum) == 1) {
+                // The definition is emitted once, visit its inputs only on the first reference
+                toVisit.addAll(node.getInputs());
+            }
+        }
+        return referenceCounts;
+    }
+
+    private boolean isShareable(RelNode node) {
+        if (node instanceof Values) {
+            return false;
+        }
+        return mode == Mode.TEMP_TABLE || !(node instanceof TableScan);
+    }
+
+    private RelNode rewrite(RelNode node) {
+        String key = keyOf(node);
+        if (shared.contains(key)) {
+            return reference(key);
+        }
+
+        List<RelNode> inputs = node.getInputs();
+        List<RelNode> rewrittenInputs = inputs.stream().map(this::rewrite).collect(Collectors.toList());
+        return rewrittenInputs.equals(inputs) ? node : node.copy(node.getTraitSet(), rewrittenInputs);
+    }
+
+    private RelNode reference(String key) {
+        RelNode reference = references.get(key);
+        if (reference != null) {
+            return reference;
+        }
+
+        RelNode representative = representatives.get(key);
+        List<RelNode> inputs = representative.getInputs().stream().map(this::rewrite).collect(Collectors.toList());
+        RelNode definition = representative.copy(representative.getTraitSet(), inputs);
+
+        String name = NAME_PREFIX + (definitions.size() + 1);
+        reference = RelTables.scan(representative.getCluster(), List.of(name), representative.getRowType());
+        references.put(key, reference);
+        referenceNames.put(reference, name);
+        definitions.put(name, definition);
+        return reference;
+    }
+
+    /**
+     * Finds the shared subplans a statement uses, directly or through other shared subplans.
+     */
+    private Set<String> usedDefinitions(RelNode statement) {
+        Set<String> used = new LinkedHashSet<>();
+        Deque<RelNode> toVisit = new ArrayDeque<>(List.of(statement));
+        while (!toVisit.isEmpty()) {
+            RelNode node = toVisit.pop();
+            String name = referenceNames.get(node);
+            if (name != null) {
+                if (used.add(name)) {
+                    toVisit.push(definitions.get(name));
+                }
+            } else {
+                toVisit.addAll(node.getInputs());
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Computes the key of a node, and the size of its subtree, from the keys of its inputs.
+     */
+    private String keyOf(RelNode node) {
+        String key = keys.get(node);
+        if (key != null) {
+            return key;
+        }
+
+        StringBuilder builder = new StringBuilder(node.getRelTypeName()).append('(');
+        int size = 1;
+        for (RelNode input : node.getInputs()) {
+            String inputKey = keyOf(input);
+            builder.append('#').append(keyIds.get(inputKey)).append(',');
+            size += sizes.get(inputKey);
+        }
+        TermWriter terms = new TermWriter();
+        node.explain(terms);
+        for (Pair<String, Object> term : terms.terms) {
+            builder.append(term.left).append('=').append(term.right).append(',');
+        }
+        builder.append(node.getRowType().getFullTypeString()).append(')');
+
+        key = builder.toString();
+        keys.put(node, key);
+        keyIds.putIfAbsent(key, keyIds.size());
+        sizes.putIfAbsent(key, size);
+        return key;
+    }
+
+    private static String indent(String sql) {
+        return sql.lines().map(line -> "    " + line).collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Collects the attributes of a node, its inputs being keyed separately.
+     */
+    private static final class TermWriter implements RelWriter {
+
+        private final List<Pair<String, Object>> terms = new ArrayList<>();
+
+        @Override
+        public void explain(RelNode rel, List<Pair<String, Object>> valueList) {
+            terms.addAll(valueList);
+        }
+
+        @Override
+        public SqlExplainLevel getDetailLevel() {
+            return SqlExplainLevel.DIGEST_ATTRIBUTES;
+        }
+
+        @Override
+        public RelWriter input(String term, RelNode input) {
+            return this;
+        }
+
+        @Override
+        public RelWriter item(String term, Object value) {
+            terms.add(Pair.of(term, value));
+            return this;
+        }
+
+        @Override
+        public RelWriter done(RelNode node) {
+            return this;
+        }
+    }
+}
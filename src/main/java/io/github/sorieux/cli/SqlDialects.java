@@ -0,0 +1,112 @@
+package io.github.sorieux.cli;
+
+import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.dialect.AnsiSqlDialect;
+import org.apache.calcite.sql.dialect.BigQuerySqlDialect;
+import org.apache.calcite.sql.dialect.CalciteSqlDialect;
+import org.apache.calcite.sql.dialect.HiveSqlDialect;
+import org.apache.calcite.sql.dialect.MssqlSqlDialect;
+import org.apache.calcite.sql.dialect.MysqlSqlDialect;
+import org.apache.calcite.sql.dialect.OracleSqlDialect;
+import org.apache.calcite.sql.dialect.PostgresqlSqlDialect;
+import org.apache.calcite.sql.dialect.PrestoSqlDialect;
+import org.apache.calcite.sql.dialect.SnowflakeSqlDialect;
+import org.apache.calcite.sql.dialect.SparkSqlDialect;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * SQL dialects the RelNodes can be converted to, by name.
+ */
+public final class SqlDialects {
+
+    /**
+     * Name of the dialect used when none is requested.
+     */
+    public static final String DEFAULT = "ansi";
+
+    private static final Map<String, SqlDialect> DIALECTS = createDialects();
+
+    private SqlDialects() {
+    }
+
+    /**
+     * Resolves dialect names, keeping their order.
+     *
+     * @param names Names of the dialects, case-insensitive.
+     * @return The dialects, keyed by their lower-case name.
+     * @throws IllegalArgumentException If a name is unknown.
+     */
+    public static Map<String, SqlDialect> resolve(List<String> names) {
+        Map<String, SqlDialect> dialects = new LinkedHashMap<>();
+        for (String name : names) {
+            String key = name.trim().toLowerCase(Locale.ROOT);
+            SqlDialect dialect = DIALECTS.get(key);
+            if (dialect == null) {
+                throw new IllegalArgumentException("Unknown SQL dialect: " + name + ". Available dialects: " + DIALECTS.keySet());
+            }
+            dialects.put(key, dialect);
+        }
+        return dialects;
+    }
+
+    /**
+     * Whether a dialect can materialize a query as a temporary table that later statements reference by its name.
+     * SQL Server names temporary tables {@code #name} and creates them with {@code SELECT ... INTO}; Presto and
+     * Trino have no temporary tables.
+     *
+     * @param dialect The SQL dialect.
+     * @return true if {@link #createTemporaryTable(SqlDialect, String, String)} supports the dialect.
+     */
+    public static boolean supportsTemporaryTables(SqlDialect dialect) {
+        return !(dialect instanceof MssqlSqlDialect) && !(dialect instanceof PrestoSqlDialect);
+    }
+
+    /**
+     * Creates the statement materializing a query as a temporary table of the session.
+     *
+     * @param dialect The SQL dialect.
+     * @param name    The name of the table, unquoted.
+     * @param query   The query.
+     * @return The statement, e.g. {@code CREATE TEMPORARY TABLE name AS query}.
+     * @throws IllegalArgumentException If the dialect has no such temporary tables.
+     */
+    public static String createTemporaryTable(SqlDialect dialect, String name, String query) {
+        if (!supportsTemporaryTables(dialect)) {
+            throw new IllegalArgumentException("The " + dialect.getClass().getSimpleName()
+                    + " dialect has no temporary tables created from a query.");
+        }
+        String table = dialect.quoteIdentifier(name);
+        if (dialect instanceof OracleSqlDialect) {
+            return "CREATE GLOBAL TEMPORARY TABLE " + table + " ON COMMIT PRESERVE ROWS AS\n" + query;
+        } else if (dialect instanceof SparkSqlDialect) {
+            // Spark has no CREATE TEMPORARY TABLE ... AS, a cached table is a materialized temporary view
+            return "CACHE TABLE " + table + " AS\n" + query;
+        } else if (dialect instanceof BigQuerySqlDialect) {
+            return "CREATE TEMP TABLE " + table + " AS\n" + query;
+        }
+        return "CREATE TEMPORARY TABLE " + table + " AS\n" + query;
+    }
+
+    private static Map<String, SqlDialect> createDialects() {
+        Map<String, SqlDialect> dialects = new LinkedHashMap<>();
+        dialects.put(DEFAULT, AnsiSqlDialect.DEFAULT);
+        dialects.put("calcite", CalciteSqlDialect.DEFAULT);
+        dialects.put("hive", HiveSqlDialect.DEFAULT);
+        dialects.put("spark", SparkSqlDialect.DEFAULT);
+        dialects.put("presto", PrestoSqlDialect.DEFAULT);
+        // Trino is the continuation of PrestoSQL, Calcite has no dedicated dialect for it
+        dialects.put("trino", PrestoSqlDialect.DEFAULT);
+        dialects.put("bigquery", BigQuerySqlDialect.DEFAULT);
+        dialects.put("mysql", MysqlSqlDialect.DEFAULT);
+        dialects.put("postgresql", PostgresqlSqlDialect.DEFAULT);
+        dialects.put("snowflake", SnowflakeSqlDialect.DEFAULT);
+        dialects.put("oracle", OracleSqlDialect.DEFAULT);
+        dialects.put("mssql", MssqlSqlDialect.DEFAULT);
+        return Collections.unmodifiableMap(dialects);
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.sorieux.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelShuttleImpl;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.schema.Statistics;
+import org.apache.calcite.util.ImmutableBitSet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Statistics of the tables LOADed by the scripts, read from a local JSON catalog.
+ * <p>
+ * Tables are keyed by the qualified name the converter gives them, joined with dots, e.g. {@code transactions.csv}
+ * for {@code `transactions`.`csv`}:
+ * <pre>
+ * {
+ *   "transactions.csv": {"rowCount": 1000000, "sizeBytes": 64000000, "columns": {"id": {"ndv": 50000}}},
+ *   "customers.csv": {"rowCount": 50000, "columns": {"id": {"ndv": 50000}}}
+ * }
+ * </pre>
+ * Only {@code rowCount} is required. Columns whose number of distinct values (NDV) equals the row count are unique
+ * keys. Table and column names are case-insensitive.
+ */
+public class TableCatalog {
+
+    private final Map<String, TableStatistics> tables;
+    private final String digest;
+
+    private TableCatalog(Map<String, TableStatistics> tables, String digest) {
+        this.tables = tables;
+        this.digest = digest;
+    }
+
+    /**
+     * Statistics of a table.
+     */
+    static final class TableStatistics {
+
+        final double rowCount;
+        final Double sizeBytes;
+        final Map<String, Double> distinctCounts;
+
+        TableStatistics(double rowCount, Double sizeBytes, Map<String, Double> distinctCounts) {
+            this.rowCount = rowCount;
+            this.sizeBytes = sizeBytes;
+            this.distinctCounts = distinctCounts;
+        }
+    }
+
+    /**
+     * Reads a catalog file.
+     *
+     * @param file Path of the JSON catalog.
+     * @return The catalog.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If a table has no row count.
+     */
+    public static TableCatalog read(Path file) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        JsonNode json = new ObjectMapper().readTree(content);
+
+        Map<String, TableStatistics> tables = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> entries = json.fields(); entries.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            JsonNode table = entry.getValue();
+            if (!table.path("rowCount").isNumber()) {
+                throw new IllegalArgumentException("Table " + entry.getKey() + " of the catalog " + file + " has no rowCount.");
+            }
+
+            Map<String, Double> distinctCounts = new HashMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> columns = table.path("columns").fields(); columns.hasNext(); ) {
+                Map.Entry<String, JsonNode> column = columns.next();
+                if (column.getValue().path("ndv").isNumber()) {
+                    distinctCounts.put(normalize(column.getKey()), column.getValue().path("ndv").asDouble());
+                }
+            }
+            Double sizeBytes = table.path("sizeBytes").isNumber() ? table.path("sizeBytes").asDouble() : null;
+            tables.put(normalize(entry.getKey()), new TableStatistics(table.path("rowCount").asDouble(), sizeBytes, distinctCounts));
+        }
+        return new TableCatalog(tables, ConversionCache.digest(content));
+    }
+
+    /**
+     * @return The SHA-256 digest of the catalog content, which changes when the statistics change.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Replaces the scans of the catalog tables by scans exposing their statistics to the planner.
+     *
+     * @param rel The RelNode to rewrite.
+     * @return The rewritten RelNode.
+     */
+    public RelNode attach(RelNode rel) {
+        return rel.accept(new RelShuttleImpl() {
+            @Override
+            public RelNode visit(TableScan scan) {
+                TableStatistics statistics = lookup(scan.getTable().getQualifiedName());
+                if (statistics == null) {
+                    return scan;
+                }
+
+                List<ImmutableBitSet> keys = new ArrayList<>();
+                for (RelDataTypeField field : scan.getRowType().getFieldList()) {
+                    Double distinctCount = statistics.distinctCounts.get(normalize(field.getName()));
+                    if (distinctCount != null && distinctCount >= statistics.rowCount) {
+                        keys.add(ImmutableBitSet.of(field.getIndex()));
+                    }
+                }
+                return RelTables.scan(scan.getCluster(), scan.getTable().getQualifiedName(), scan.getRowType(),
+                        Statistics.of(statistics.rowCount, keys));
+            }
+        });
+    }
+
+    /**
+     * Estimates the number of distinct values of a group of columns of a table, as the product of the NDVs of the
+     * columns, bounded by the row count.
+     *
+     * @param tableName The qualified name of the table.
+     * @param rowType   The row type of the table.
+     * @param columns   The columns of the group.
+     * @return The estimate, or null if the table or the NDV of a column is unknown.
+     */
+    Double getDistinctCount(List<String> tableName, RelDataType rowType, ImmutableBitSet columns) {
+        TableStatistics statistics = lookup(tableName);
+        if (statistics == null) {
+            return null;
+        }
+
+        double distinctCount = 1;
+        for (int column : columns) {
+            Double columnDistinctCount = statistics.distinctCounts.get(normalize(rowType.getFieldNames().get(column)));
+            if (columnDistinctCount == null) {
+                return null;
+            }
+            distinctCount *= columnDistinctCount;
+        }
+        return Math.min(distinctCount, statistics.rowCount);
+    }
+
+    /**
+     * @param tableName The qualified name of the table.
+     * @return The average size of a row of the table in bytes, or null if unknown.
+     */
+    Double getAverageRowSize(List<String> tableName) {
+        TableStatistics statistics = lookup(tableName);
+        if (statistics == null || statistics.sizeBytes == null || statistics.rowCount <= 0) {
+            return null;
+        }
+        return statistics.sizeBytes / statistics.rowCount;
+    }
+
+    private TableStatistics lookup(List<String> tableName) {
+        return tables.get(normalize(String.join(".", tableName)));
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -2,16 +2,26 @@ package io.github.sorieux.cli;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.apache.calcite.sql.SqlDialect;
+import picocli.CommandLine;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import java.io.File;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -89,6 +99,49 @@ class CommandsTest {
         deleteIfExists(Paths.get(outputFilePath));
     }
 
+    @Test
+    void testConvertPigFileToSQLStreamsEachStatement() {
+        String inputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig").toString();
+        StringWriter output = new StringWriter();
+        // Length of the output each time a statement is converted from its RelNode
+        List<Integer> outputLengths = new ArrayList<>();
+        ConversionMetrics.FileMetrics fileMetrics = new ConversionMetrics.FileMetrics(inputFilePath) {
+            @Override
+            public synchronized void record(String stage, long startNanos) {
+                if (stage.equals(ConversionMetrics.REL_TO_SQL)) {
+                    outputLengths.add(output.getBuffer().length());
+                }
+                super.record(stage, startNanos);
+            }
+        };
+
+        commands.convertPigFileToSQL(inputFilePath, dialectName -> output, fileMetrics);
+        assertEquals(expectedSQLTestPig2, output.toString().trim());
+        assertEquals(2, outputLengths.size());
+        assertTrue(outputLengths.get(1) > 0, "The first statement must be written before the last one is unparsed");
+    }
+
+    @Test
+    void testFailedConversionKeepsPreviousOutput() throws IOException {
+        String inputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig").toString();
+        Path directory = Paths.get(BASE_DIR, "tmpFailedOutput");
+        Files.createDirectories(directory);
+        Path output = directory.resolve("out.mssql.sql");
+        Files.writeString(output, "SELECT 1");
+
+        // The output is opened, then the temporary table of the shared subplan cannot be created in this dialect
+        new CommandLine(commands).parseArgs("--shared-subplans", "temp_table", "--dialects", "mssql");
+        assertThrows(RuntimeException.class,
+                () -> commands.convertPigFileToSQL(inputFilePath, directory.resolve("out.sql").toString()));
+        assertEquals("SELECT 1", Files.readString(output));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "The temporary file must be deleted");
+        }
+
+        // Cleanup after this test
+        deleteDirectory(directory);
+    }
+
     @Test
     void testConvertPigDirectoryToSQL() throws IOException {
         String inputDirectoryPath = BASE_DIR;
@@ -103,6 +156,502 @@ class CommandsTest {
         deleteDirectory(Paths.get(outputDirectoryPath));
     }
 
+    @Test
+    void testConvertPigDirectoryToSQLRecursiveWithThreads() throws IOException {
+        Path inputDirectory = Paths.get(BASE_DIR, "recursiveDirectory");
+        Path nestedDirectory = inputDirectory.resolve("nested");
+        Files.createDirectories(nestedDirectory);
+        Files.copy(Paths.get(BASE_DIR, "testPig.pig"), inputDirectory.resolve("testPig.pig"));
+        Files.copy(Paths.get(BASE_DIR, "testPig2.pig"), nestedDirectory.resolve("testPig2.pig"));
+
+        Path outputDirectory = Paths.get(BASE_DIR, "tmpRecursive");
+
+        new CommandLine(commands).parseArgs("--threads", "2", "--recursive", "--timeout", "120");
+        Map<String, Boolean> results = commands.convertPigDirectoryToSQL(inputDirectory.toString(), outputDirectory.toString());
+
+        String nestedName = Paths.get("nested", "testPig2.pig").toString();
+        assertEquals(2, results.size());
+        assertTrue(results.get("testPig.pig"), "Conversion failed for file: testPig.pig");
+        assertTrue(results.get(nestedName), "Conversion failed for file: " + nestedName);
+        assertTrue(Files.exists(outputDirectory.resolve("nested").resolve("testPig2.sql")));
+
+        // Cleanup after this test
+        deleteDirectory(outputDirectory);
+        deleteDirectory(inputDirectory);
+    }
+
+    @Test
+    void testConversionExceedingTimeoutIsDiscarded() throws IOException, InterruptedException {
+        Path inputDirectory = Paths.get(BASE_DIR, "timeoutDirectory");
+        Files.createDirectories(inputDirectory);
+        Files.copy(Paths.get(BASE_DIR, "testPig.pig"), inputDirectory.resolve("testPig.pig"));
+        Path outputDirectory = Paths.get(BASE_DIR, "tmpTimeout");
+
+        // A slow script: the SQL is written, then the conversion keeps running past the timeout, ignoring the
+        // interruption as Pig and Calcite do
+        CountDownLatch converted = new CountDownLatch(1);
+        Commands slowCommands = new Commands() {
+            @Override
+            protected void convertPigFileToSQL(String inputFile, SqlOutputs outputs, ConversionMetrics.FileMetrics fileMetrics) {
+                super.convertPigFileToSQL(inputFile, outputs, fileMetrics);
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+                while (System.nanoTime() < end) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        // Ignored
+                    }
+                }
+                converted.countDown();
+            }
+        };
+
+        new CommandLine(slowCommands).parseArgs("--timeout", "1");
+        Map<String, Boolean> results = slowCommands.convertPigDirectoryToSQL(inputDirectory.toString(), outputDirectory.toString());
+        assertFalse(results.get("testPig.pig"), "The conversion must be reported as failed");
+
+        // Once the conversion ends on its own, its temporary file is deleted instead of being moved into place
+        assertTrue(converted.await(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (hasTemporaryFiles(outputDirectory) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(hasTemporaryFiles(outputDirectory), "The temporary file must be deleted");
+        assertFalse(Files.exists(outputDirectory.resolve("testPig.sql")), "No SQL must be written");
+
+        // Cleanup after this test
+        deleteDirectory(outputDirectory);
+        deleteDirectory(inputDirectory);
+    }
+
+    @Test
+    void testConvertPigDirectoryToSQLWithMetricsReport() throws IOException {
+        Path outputDirectory = Paths.get(BASE_DIR, "tmpMetrics");
+        Path report = outputDirectory.resolve("metrics.csv");
+        Files.createDirectories(outputDirectory);
+
+        int exitCode = new CommandLine(commands).execute("-id", BASE_DIR, "-od", outputDirectory.toString(),
+                "--metrics-out", report.toString());
+        assertEquals(0, exitCode);
+
+        List<String> lines = Files.readAllLines(report);
+        assertTrue(lines.get(0).startsWith("file,success,cached,totalMs,"));
+        assertEquals(4, lines.size(), "One header line and one line per Pig file expected");
+        assertTrue(lines.get(1).startsWith("pig_script_join_multi_store.pig,true,false,"));
+
+        // Cleanup after this test
+        deleteDirectory(outputDirectory);
+    }
+
+    @Test
+    void testConvertPigFileToSQLWithOptimization() throws IOException {
+        String inputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig").toString();
+        String outputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store_optimized.sql").toString();
+
+        new CommandLine(commands).parseArgs("--optimize");
+        commands.convertPigFileToSQL(inputFilePath, outputFilePath);
+        String result = new String(Files.readAllBytes(Paths.get(outputFilePath)), StandardCharsets.UTF_8);
+
+        assertTrue(result.contains("GROUP BY `date`"), result);
+        assertTrue(result.contains("INNER JOIN `customers`.`csv`"), result);
+        assertTrue(result.contains("> 100"), result);
+
+        // Cleanup after this test
+        deleteIfExists(Paths.get(outputFilePath));
+    }
+
+    @Test
+    void testConvertPigFileToSQLWithSeveralDialects() throws IOException {
+        String inputFilePath = Paths.get(BASE_DIR, "testPig.pig").toString();
+        String outputFilePath = Paths.get(BASE_DIR, "testPigDialects.sql").toString();
+
+        new CommandLine(commands).parseArgs("--dialects", "hive,postgresql");
+        commands.convertPigFileToSQL(inputFilePath, outputFilePath);
+
+        Path hiveOutput = Paths.get(BASE_DIR, "testPigDialects.hive.sql");
+        Path postgresqlOutput = Paths.get(BASE_DIR, "testPigDialects.postgresql.sql");
+        String hiveSql = new String(Files.readAllBytes(hiveOutput), StandardCharsets.UTF_8);
+        String postgresqlSql = new String(Files.readAllBytes(postgresqlOutput), StandardCharsets.UTF_8);
+
+        assertTrue(hiveSql.contains("FROM `testPig`.`pig`"), hiveSql);
+        assertTrue(postgresqlSql.contains("FROM \"testPig\".\"pig\""), postgresqlSql);
+
+        // Cleanup after this test
+        deleteIfExists(hiveOutput);
+        deleteIfExists(postgresqlOutput);
+    }
+
+    @Test
+    void testConvertPigFileToSQLWithSharedTempTables() throws IOException {
+        String inputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig").toString();
+        String outputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store_shared.sql").toString();
+
+        new CommandLine(commands).parseArgs("--shared-subplans", "temp_table");
+        commands.convertPigFileToSQL(inputFilePath, outputFilePath);
+        String result = new String(Files.readAllBytes(Paths.get(outputFilePath)), StandardCharsets.UTF_8);
+
+        // transactions is loaded once and read by both statements
+        assertTrue(result.startsWith("CREATE TEMPORARY TABLE `shared_1` AS\nSELECT *\nFROM `transactions`.`csv`"), result);
+        assertEquals(1, result.split("FROM `transactions`.`csv`", -1).length - 1, result);
+        assertEquals(3, result.trim().split("\n\n").length, result);
+
+        // Cleanup after this test
+        deleteIfExists(Paths.get(outputFilePath));
+    }
+
+    @Test
+    void testSharedTempTablesPerDialect() {
+        Map<String, SqlDialect> dialects = SqlDialects.resolve(List.of("spark", "oracle", "mssql"));
+
+        assertTrue(SqlDialects.createTemporaryTable(dialects.get("spark"), "shared_1", "SELECT 1").startsWith("CACHE TABLE "));
+        assertTrue(SqlDialects.createTemporaryTable(dialects.get("oracle"), "shared_1", "SELECT 1")
+                .startsWith("CREATE GLOBAL TEMPORARY TABLE \"shared_1\" ON COMMIT PRESERVE ROWS AS"));
+        assertThrows(IllegalArgumentException.class,
+                () -> SqlDialects.createTemporaryTable(dialects.get("mssql"), "shared_1", "SELECT 1"));
+
+        int exitCode = new CommandLine(commands).execute("-s", "A = LOAD 'a' AS (x:int);",
+                "--shared-subplans", "temp_table", "--dialects", "hive,mssql");
+        assertEquals(2, exitCode, "temp_table is not supported by mssql");
+    }
+
+    @Test
+    void testSharedSubplanInCommonTableExpression() {
+        String pigScript = "data = LOAD 'input.txt' USING PigStorage(',') AS (id:int, name:chararray, age:int);\n" +
+                "adults = FILTER data BY age > 25;\n" +
+                "names = FOREACH adults GENERATE id, name;\n" +
+                "ages = FOREACH adults GENERATE id, age;\n" +
+                "pairs = JOIN names BY id, ages BY id;\n";
+
+        new CommandLine(commands).parseArgs("--shared-subplans", "cte");
+        String result = commands.convertPigStringToSQL(pigScript);
+
+        assertTrue(result.startsWith("WITH `shared_1` AS ("), result);
+        assertEquals(1, result.split("WHERE `age` > 25", -1).length - 1, result);
+    }
+
+    @Test
+    void testConvertPigFileToSQLWithParameterSets() throws IOException {
+        Path directory = Paths.get(BASE_DIR, "tmpParameterSets");
+        Files.createDirectories(directory);
+        Path script = directory.resolve("params.pig");
+        Files.writeString(script, "%default n 5\n" +
+                "data = LOAD '$input' USING PigStorage(',') AS (id:int, category:chararray, amount:double);\n" +
+                "selected = FILTER data BY category == '$category';\n" +
+                "top_rows = LIMIT selected $n;\n" +
+                "STORE top_rows INTO '$output';\n");
+        Path parameterFile = directory.resolve("params.csv");
+        Files.writeString(parameterFile, "input,category,n\n" +
+                "tenant_a.csv,books,3\n" +
+                "tenant_b.csv,games,10\n");
+
+        String outputFile = directory.resolve("out_${category}.sql").toString();
+        List<String> outputFiles = commands.convertPigFileToSQL(script.toString(), outputFile,
+                ParameterSets.read(parameterFile));
+
+        assertEquals(List.of(directory.resolve("out_books.sql").toString(), directory.resolve("out_games.sql").toString()),
+                outputFiles);
+        String books = Files.readString(Paths.get(outputFiles.get(0)));
+        String games = Files.readString(Paths.get(outputFiles.get(1)));
+        assertTrue(books.contains("FROM `tenant_a`.`csv`") && books.contains("= 'books'") &&
+                books.contains("FETCH NEXT 3 ROWS ONLY"), books);
+        assertTrue(games.contains("FROM `tenant_b`.`csv`") && games.contains("= 'games'") &&
+                games.contains("FETCH NEXT 10 ROWS ONLY"), games);
+
+        // Cleanup after this test
+        deleteDirectory(directory);
+    }
+
+    @Test
+    void testConvertPigFileToSQLWithParameterComparedToConstant() throws IOException {
+        Path directory = Paths.get(BASE_DIR, "tmpParameterFolding");
+        Files.createDirectories(directory);
+        Path script = directory.resolve("mode.pig");
+        Files.writeString(script, "data = LOAD 'events.csv' USING PigStorage(',') AS (id:int, amount:double);\n" +
+                "selected = FILTER data BY '$mode' == 'full' OR amount > 10.0;\n" +
+                "STORE selected INTO '$output';\n");
+
+        // The comparison is folded, the SQL of 'full' cannot be rendered from the one of 'part'
+        List<String> outputFiles = commands.convertPigFileToSQL(script.toString(),
+                directory.resolve("out_$mode.sql").toString(), List.of(Map.of("mode", "part"), Map.of("mode", "full")));
+        List<String> fullOnly = commands.convertPigFileToSQL(script.toString(),
+                directory.resolve("only_$mode.sql").toString(), List.of(Map.of("mode", "full")));
+
+        String part = Files.readString(Paths.get(outputFiles.get(0)));
+        String full = Files.readString(Paths.get(outputFiles.get(1)));
+        assertTrue(part.contains("> 10"), part);
+        assertEquals(Files.readString(Paths.get(fullOnly.get(0))), full);
+
+        // Cleanup after this test
+        deleteDirectory(directory);
+    }
+
+    @Test
+    void testParameterSetOutputFile() {
+        assertEquals("out.2.sql", Commands.parameterSetOutputFile("out.sql", Map.of("n", "3"), 2));
+        assertEquals("out_3_x.sql", Commands.parameterSetOutputFile("out_${n}_$m.sql", Map.of("n", "3", "m", "x"), 1));
+    }
+
+    @Test
+    void testConvertPigFileToSQLWithCatalogReordersJoins() throws IOException {
+        String inputFilePath = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig").toString();
+        Path catalog = Paths.get(BASE_DIR, "catalog.json");
+        // customers is much larger than transactions, it becomes the left (probe) side of the join
+        Files.writeString(catalog, "{\n" +
+                "  \"transactions.csv\": {\"rowCount\": 1000, \"columns\": {\"id\": {\"ndv\": 1000}}},\n" +
+                "  \"customers.csv\": {\"rowCount\": 10000000, \"sizeBytes\": 640000000, \"columns\": {\"id\": {\"ndv\": 10000000}}}\n" +
+                "}\n");
+
+        new CommandLine(commands).parseArgs("--catalog", catalog.toString());
+        String result = commands.convertPigFileToSQL(inputFilePath);
+
+        assertTrue(result.contains("FROM `customers`.`csv`"), result);
+        assertTrue(result.contains("INNER JOIN `transactions`.`csv`"), result);
+        assertTrue(result.contains("GROUP BY `date`"), result);
+
+        // Cleanup after this test
+        deleteIfExists(catalog);
+    }
+
+    @Test
+    void testConvertPigDirectoryToSQLWithDeduplication() throws IOException {
+        Path inputDirectory = Paths.get(BASE_DIR, "dedupeDirectory");
+        Files.createDirectories(inputDirectory);
+        String script = Files.readString(Paths.get(BASE_DIR, "testPig.pig"));
+        Files.writeString(inputDirectory.resolve("testPig.pig"), script);
+        Files.writeString(inputDirectory.resolve("testPigTen.pig"), script.replace("%DECLARE n 5", "%DECLARE n 10"));
+        Path outputDirectory = Paths.get(BASE_DIR, "tmpDedupe");
+
+        new CommandLine(commands).parseArgs("--dedupe");
+        Map<String, Boolean> results = commands.convertPigDirectoryToSQL(inputDirectory.toString(), outputDirectory.toString());
+
+        assertEquals(Map.of("testPig.pig", true, "testPigTen.pig", true), results);
+        assertEquals(expectedSQLTestPig, Files.readString(outputDirectory.resolve("testPig.sql")).trim());
+        String ten = Files.readString(outputDirectory.resolve("testPigTen.sql"));
+        assertTrue(ten.contains("FROM `testPigTen`.`pig`") && ten.contains("FETCH NEXT 10 ROWS ONLY"), ten);
+
+        String report = Files.readString(outputDirectory.resolve(Commands.DUPLICATION_REPORT));
+        assertTrue(report.contains("\"scriptShapes\" : 1") && report.contains("\"planShapes\" : 1"), report);
+
+        // Cleanup after this test
+        deleteDirectory(outputDirectory);
+        deleteDirectory(inputDirectory);
+    }
+
+    @Test
+    void testConvertPigDirectoryToSQLWithDeduplicationOfFoldedLiterals() throws IOException {
+        Path inputDirectory = Paths.get(BASE_DIR, "dedupeFoldedDirectory");
+        Files.createDirectories(inputDirectory);
+        String script = "data = LOAD 'events.csv' USING PigStorage(',') AS (id:int, amount:double);\n" +
+                "selected = FILTER data BY '%s' == 'full' OR amount > 10.0;\n" +
+                "STORE selected INTO 'out';\n";
+        Files.writeString(inputDirectory.resolve("a_part.pig"), String.format(script, "part"));
+        Files.writeString(inputDirectory.resolve("b_full.pig"), String.format(script, "full"));
+        Path outputDirectory = Paths.get(BASE_DIR, "tmpDedupeFolded");
+
+        new CommandLine(commands).parseArgs("--dedupe");
+        Map<String, Boolean> results = commands.convertPigDirectoryToSQL(inputDirectory.toString(), outputDirectory.toString());
+
+        // The comparison is folded, the SQL of b_full.pig cannot be rendered from the one of a_part.pig
+        assertEquals(Map.of("b_full.pig", true, "a_part.pig", true), results);
+        String full = Files.readString(outputDirectory.resolve("b_full.sql"));
+        String part = Files.readString(outputDirectory.resolve("a_part.sql"));
+        assertTrue(part.contains("> 10"), part);
+        assertFalse(full.contains("> 10"), full);
+
+        // Each script converted on its own is reported with the fingerprint of its own plan
+        String report = Files.readString(outputDirectory.resolve(Commands.DUPLICATION_REPORT));
+        assertTrue(report.contains("\"scriptShapes\" : 1") && report.contains("\"planShapes\" : 2"), report);
+
+        // Cleanup after this test
+        deleteDirectory(outputDirectory);
+        deleteDirectory(inputDirectory);
+    }
+
+    @Test
+    void testScriptShapeIgnoresLiteralsAndComments() {
+        ScriptShape shape = ScriptShape.of("-- top 5\n%declare n 5\nA = LOAD 'a.csv' AS (x:int);\nB = LIMIT A $n;\n");
+        ScriptShape other = ScriptShape.of("%declare n 10\nA = LOAD   'b.csv' AS (x:int); -- top 10\nB = LIMIT A $n;\n");
+
+        assertEquals(shape.getFingerprint(), other.getFingerprint());
+        assertEquals(Map.of("__lit_0", "10", "__lit_1", "b.csv"), other.getLiterals());
+        assertTrue(other.getTemplate().startsWith("%declare n $__lit_0\nA = LOAD   '$__lit_1'"), other.getTemplate());
+    }
+
+    @Test
+    void testScriptComponentsSplitsIndependentBranches() {
+        ScriptComponents components = ScriptComponents.of("%default out 'out'\n" +
+                "SET default_parallel 4;\n" +
+                "A = LOAD 'a.csv' AS (x:int);\n" +
+                "B = LOAD 'b.csv' AS (x:int); -- B = FILTER A BY x > 0;\n" +
+                "A = FILTER A BY x > 0;\n" +
+                "unused = LOAD 'c.csv' AS (x:int);\n" +
+                "STORE B INTO '$out/b';\n" +
+                "SPLIT A INTO small IF x < 10, large OTHERWISE;\n" +
+                "STORE large INTO 'A';\n");
+
+        assertEquals(List.of(
+                "%default out 'out'\nSET default_parallel 4;\nB = LOAD 'b.csv' AS (x:int);\nSTORE B INTO '$out/b';\n",
+                "%default out 'out'\nSET default_parallel 4;\nA = LOAD 'a.csv' AS (x:int);\nA = FILTER A BY x > 0;\n" +
+                        "SPLIT A INTO small IF x < 10, large OTHERWISE;\nSTORE large INTO 'A';\n"),
+                components.getScripts());
+
+        String importing = "IMPORT 'macro.pig';\nA = LOAD 'a';\nB = LOAD 'b';\nSTORE A INTO 'a';\nSTORE B INTO 'b';\n";
+        assertEquals(List.of(importing), ScriptComponents.of(importing).getScripts());
+    }
+
+    @Test
+    void testConvertPigStringToSQLWithSplitComponents() {
+        StringBuilder pigScript = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            pigScript.append(String.format("t%d = LOAD 'table%d.csv' USING PigStorage(',') AS (id:int, amount:double);%n", i, i))
+                    .append(String.format("f%d = FILTER t%d BY amount > %d;%n", i, i, i))
+                    .append(String.format("STORE f%d INTO 'output%d';%n", i, i));
+        }
+        String whole = commands.convertPigStringToSQL(pigScript.toString());
+
+        new CommandLine(commands).parseArgs("--split-components");
+        String split = commands.convertPigStringToSQL(pigScript.toString());
+
+        assertEquals(whole.split("\n\n").length, split.split("\n\n").length);
+        assertEquals(Set.of(whole.split("\n\n")), Set.of(split.split("\n\n")));
+        assertEquals(split, commands.convertPigStringToSQL(pigScript.toString()));
+    }
+
+    @Test
+    void testAnalyzePigFilesFlagsAntiPatterns() throws IOException {
+        Path inputFile = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig");
+        Path missingFile = Paths.get(BASE_DIR, "missing.pig");
+        Path report = Paths.get(BASE_DIR, "analysis.json");
+
+        PlanAnalyzer analyzer = commands.analyzePigFiles(null, List.of(inputFile, missingFile));
+        analyzer.write(report);
+
+        List<Map<String, Object>> ranked = analyzer.ranked();
+        assertEquals(2, ranked.size());
+        assertEquals(1, ranked.get(0).get("rank"));
+        String json = Files.readString(report);
+        assertTrue(json.contains(PlanAnalyzer.SORT_WITHOUT_LIMIT) && json.contains(PlanAnalyzer.FILTER_ABOVE_JOIN), json);
+        assertTrue(json.contains("\"script\" : \"" + missingFile.toString().replace("\\", "\\\\") + "\""), json);
+
+        // Cleanup after this test
+        deleteIfExists(report);
+    }
+
+    @Test
+    void testAnalyzePigFilesFlagsDistinctBelowJoinUnderLimit() throws IOException {
+        Path directory = Paths.get(BASE_DIR, "tmpAnalyzeLimit");
+        Files.createDirectories(directory);
+        Path inputFile = directory.resolve("limit_join.pig");
+        Files.writeString(inputFile, "A = LOAD 'a.csv' USING PigStorage(',') AS (id:int, x:int);\n" +
+                "B = LOAD 'b.csv' USING PigStorage(',') AS (id:int, y:int);\n" +
+                "D = DISTINCT B;\n" +
+                "J = JOIN A BY id, D BY id;\n" +
+                "L = LIMIT J 10;\n" +
+                "STORE L INTO 'out';\n");
+
+        // The LIMIT bounds the rows of the join, not the rows the DISTINCT reads
+        List<Map<String, Object>> ranked = commands.analyzePigFiles(null, List.of(inputFile)).ranked();
+        assertEquals(1, ranked.size());
+        List<?> antiPatterns = (List<?>) ranked.get(0).get("antiPatterns");
+        assertTrue(antiPatterns.stream().anyMatch(finding ->
+                PlanAnalyzer.UNBOUNDED_DISTINCT.equals(((Map<?, ?>) finding).get("rule"))), antiPatterns.toString());
+
+        // Cleanup after this test
+        deleteDirectory(directory);
+    }
+
+    @Test
+    void testExecutePigFilesMatchesRelNodesAndSql() throws IOException {
+        Path inputFile = Paths.get(BASE_DIR, "pig_script_join_multi_store.pig");
+        Path report = Paths.get(BASE_DIR, "differential.json");
+
+        new CommandLine(commands).parseArgs("--sample-rows", "200");
+        DifferentialExecution execution = commands.executePigFiles(null, List.of(inputFile));
+        execution.write(report);
+
+        List<Map<String, Object>> queries = execution.getQueries();
+        assertEquals(2, queries.size());
+        for (Map<String, Object> query : queries) {
+            assertEquals(true, query.get("consistent"), query.toString());
+            assertEquals(4, ((Map<?, ?>) query.get("variants")).size());
+        }
+        String json = Files.readString(report);
+        assertTrue(json.contains("\"" + DifferentialExecution.OPTIMIZED_SQL + "\"") && json.contains("medianAllocatedBytes"), json);
+
+        // Cleanup after this test
+        deleteIfExists(report);
+    }
+
+    @Test
+    void testExecutePigFilesRejectsTablesLoadedWithDifferentSchemas() throws IOException {
+        Path directory = Paths.get(BASE_DIR, "tmpDifferential");
+        Files.createDirectories(directory);
+        Path inputFile = directory.resolve("differentSchemas.pig");
+        Files.writeString(inputFile, "a = LOAD 'events.csv' USING PigStorage(',') AS (id:int, amount:double);\n" +
+                "b = LOAD 'events.csv' USING PigStorage(',') AS (name:chararray);\n" +
+                "STORE a INTO 'out_a';\n" +
+                "STORE b INTO 'out_b';\n");
+        Path report = directory.resolve("differential.json");
+
+        new CommandLine(commands).parseArgs("--sample-rows", "10");
+        DifferentialExecution execution = commands.executePigFiles(null, List.of(inputFile));
+        execution.write(report);
+
+        assertEquals(0, execution.getQueries().size());
+        String json = Files.readString(report);
+        assertTrue(json.contains("is loaded with different schemas"), json);
+
+        // Cleanup after this test
+        deleteDirectory(directory);
+    }
+
+    @Test
+    void testConvertPigStringToSQLWithPartitionMapping() throws IOException {
+        Path mapping = Paths.get(BASE_DIR, "partitions.json");
+        Files.writeString(mapping, "{\n" +
+                "  \"/data/events/dt={dt}\": {\"table\": \"warehouse.events\"},\n" +
+                "  \"/data/users/{region}/*\": {\"table\": \"warehouse.users\"}\n" +
+                "}\n");
+        String pigScript = "events = LOAD '/data/events/dt=2024-01-*' USING PigStorage(',') AS (id:int, amount:double);\n" +
+                "users = LOAD '/data/users/{eu,us}/part-0' USING PigStorage(',') AS (id:int, name:chararray);\n" +
+                "joined = JOIN events BY id, users BY id;\n" +
+                "STORE joined INTO 'output.txt' USING PigStorage(',');\n";
+
+        new CommandLine(commands).parseArgs("--partitions", mapping.toString());
+        String result = commands.convertPigStringToSQL(pigScript);
+
+        assertTrue(result.contains("`warehouse`.`events`") && result.contains("`warehouse`.`users`"), result);
+        assertTrue(result.contains("LIKE '2024-01-%'"), result);
+        assertTrue(result.contains("IN ('eu', 'us')"), result);
+
+        // Cleanup after this test
+        deleteIfExists(mapping);
+    }
+
+    @Test
+    void testPartitionMappingResolvesLoadPathParameters() {
+        String script = "%default dt '2024-01-01'\n" +
+                "%declare region eu\n" +
+                "-- A = LOAD '/commented/out';\n" +
+                "A = LOAD '/data/$region/dt=$dt' AS (x:int);\n" +
+                "B = LOAD '${input}' AS (x:int);\n";
+
+        assertEquals(List.of("/data/eu/dt=2024-01-01", "in.csv"),
+                PartitionMapping.loadPaths(script, Map.of("input", "in.csv", "region", "us")));
+        assertEquals(List.of("/data/eu/dt=2024-02-01", "$input"),
+                PartitionMapping.loadPaths(script, Map.of("dt", "2024-02-01")));
+    }
+
+    @Test
+    void testUnknownDialect() {
+        assertThrows(IllegalArgumentException.class, () -> SqlDialects.resolve(List.of("NOT_A_DIALECT")));
+    }
+
+    @Test
+    void testUnknownOptimizationRule() {
+        assertThrows(IllegalArgumentException.class, () -> new PlanOptimizer(List.of("NOT_A_RULE")));
+    }
+
     @Test
     void testInvalidParameters() {
         //TODO
@@ -280,6 +829,12 @@ class CommandsTest {
         }
     }
 
+    private boolean hasTemporaryFiles(Path dirPath) throws IOException {
+        try (Stream<Path> files = Files.list(dirPath)) {
+            return files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp"));
+        }
+    }
+
     private void deleteDirectory(Path dirPath) throws IOException {
         if (Files.exists(dirPath) && Files.isDirectory(dirPath)) {
             Files.walk(dirPath)
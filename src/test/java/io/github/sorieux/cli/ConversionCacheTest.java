@@ -0,0 +1,56 @@
+package io.github.sorieux.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testKeyDependsOnScriptParamsSettingsAndImports() throws IOException {
+        Path macro = tempDir.resolve("myfilter.macro");
+        Files.writeString(macro, "DEFINE myfilter(relvar,colvar) returns x{\n$x = filter $relvar by $colvar==15;\n};\n");
+        Path script = tempDir.resolve("script.pig");
+        Files.writeString(script, "IMPORT 'myfilter.macro';\nemp = load '/data/employee' as (eno,dno);\n");
+
+        ConversionCache cache = new ConversionCache(tempDir.resolve("cache"), 1024);
+        String key = cache.key(script, Map.of("input", "a"), "dialect=ansi");
+
+        assertEquals(key, cache.key(script, Map.of("input", "a"), "dialect=ansi"));
+        assertNotEquals(key, cache.key(script, Map.of("input", "b"), "dialect=ansi"));
+        assertNotEquals(key, cache.key(script, Map.of("input", "a"), "dialect=hive"));
+
+        Files.writeString(macro, "DEFINE myfilter(relvar,colvar) returns x{\n$x = filter $relvar by $colvar==16;\n};\n");
+        assertNotEquals(key, cache.key(script, Map.of("input", "a"), "dialect=ansi"));
+        assertEquals(List.of(macro.toAbsolutePath().normalize()), ConversionCache.findImports(script));
+    }
+
+    @Test
+    void testEntriesArePersistedAndEvictedInLeastRecentlyUsedOrder() {
+        Path directory = tempDir.resolve("cache");
+        ConversionCache cache = new ConversionCache(directory, 10);
+
+        cache.put("first", "SELECT 1");
+        cache.put("second", "SELECT 2");
+        assertFalse(cache.get("first").isPresent(), "The least recently used entry should be evicted");
+        assertEquals(Optional.of("SELECT 2"), cache.get("second"));
+
+        ConversionCache reopened = new ConversionCache(directory, 10);
+        assertEquals(Optional.of("SELECT 2"), reopened.get("second"));
+        assertTrue(Files.exists(directory.resolve("second.sql")));
+    }
+}
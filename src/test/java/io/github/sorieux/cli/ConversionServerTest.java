@@ -0,0 +1,96 @@
+package io.github.sorieux.cli;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionServerTest {
+
+    private static final String TOKEN = ConversionServer.generateToken();
+
+    private ConversionServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ConversionServer(new Commands(), "127.0.0.1", 0, 2, TOKEN);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testConvertPigString() throws IOException {
+        String pigScript = "data = LOAD 'input.txt' USING PigStorage(',') AS (id:int, name:chararray, age:int);\n" +
+                "filtered_data = FILTER data BY age > 25;\n" +
+                "STORE filtered_data INTO 'output.txt' USING PigStorage(',');\n";
+        String expectedSQL = "SELECT *\n" +
+                "FROM `input`.`txt`\n" +
+                "WHERE `age` > 25";
+
+        HttpURLConnection connection = post("/convert", pigScript, TOKEN);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(expectedSQL, read(connection.getInputStream()).trim());
+    }
+
+    @Test
+    void testConversionErrorReturnsBadRequest() throws IOException {
+        HttpURLConnection connection = post("/convert", "INVALID_PIG_SCRIPT", TOKEN);
+        assertEquals(400, connection.getResponseCode());
+    }
+
+    @Test
+    void testRequestWithoutTokenIsRejected() throws IOException {
+        assertEquals(401, post("/convert", "A = LOAD 'a' AS (x:int);", null).getResponseCode());
+        assertEquals(401, post("/convert-file?input=src/test/resources/testPig.pig", "", "wrong").getResponseCode());
+
+        HttpURLConnection health = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/health").openConnection();
+        assertEquals(401, health.getResponseCode());
+    }
+
+    @Test
+    void testConvertPigFileIgnoresOutput() throws IOException {
+        Path output = Paths.get("src/test/resources/serverOutput.sql");
+
+        HttpURLConnection connection = post("/convert-file?input=src/test/resources/testPig.pig&output=" + output, "", TOKEN);
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection.getInputStream()).contains("FROM `testPig`.`pig`"));
+        assertFalse(Files.exists(output), "The server must not write files");
+    }
+
+    private HttpURLConnection post(String path, String body, String token) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        connection.setDoOutput(true);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    private String read(InputStream input) throws IOException {
+        try (InputStream stream = input) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.sorieux.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DirectoryWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testChangedMacroAffectsTheScriptsImportingIt() throws IOException {
+        Path macro = tempDir.resolve("myfilter.macro");
+        Files.writeString(macro, "DEFINE myfilter(relvar,colvar) returns x{\n$x = filter $relvar by $colvar==15;\n};\n");
+        Path importing = tempDir.resolve("importing.pig").toAbsolutePath();
+        Files.writeString(importing, "IMPORT 'myfilter.macro';\nemp = load '/data/employee' as (eno,dno);\n");
+        Path other = tempDir.resolve("other.pig").toAbsolutePath();
+        Files.writeString(other, "emp = load '/data/employee' as (eno,dno);\n");
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(tempDir, List.of(importing, other), false, 10)) {
+            assertEquals(Set.of(importing), watcher.affectedScripts(Set.of(macro)));
+            assertEquals(Set.of(other), watcher.affectedScripts(Set.of(other)));
+
+            // The import is removed: the macro no longer affects the script
+            Files.writeString(importing, "emp = load '/data/employee' as (eno,dno);\n");
+            assertEquals(Set.of(importing), watcher.affectedScripts(Set.of(importing)));
+            assertEquals(Set.of(), watcher.affectedScripts(Set.of(macro)));
+
+            Files.delete(other);
+            assertEquals(Set.of(), watcher.affectedScripts(Set.of(other)));
+        }
+    }
+
+    @Test
+    void testRunReportsChangedScripts() throws Exception {
+        Path script = tempDir.resolve("script.pig").toAbsolutePath();
+        Files.writeString(script, "emp = load '/data/employee' as (eno,dno);\n");
+        BlockingQueue<Set<Path>> changes = new LinkedBlockingQueue<>();
+
+        try (DirectoryWatcher watcher = new DirectoryWatcher(tempDir, List.of(script), false, 10)) {
+            Thread watching = new Thread(() -> {
+                try {
+                    watcher.run(changes::add);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            watching.start();
+
+            Files.writeString(script, "emp = load '/data/employee' as (eno,dno,name);\n");
+            // Polling watch services may take several seconds to notice a change
+            Set<Path> changed = changes.poll(30, TimeUnit.SECONDS);
+            assertEquals(Set.of(script), changed);
+
+            watcher.close();
+            watching.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(watching.isAlive(), "Closing the watcher should stop it");
+        }
+    }
+}